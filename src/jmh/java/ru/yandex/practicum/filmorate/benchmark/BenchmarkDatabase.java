@@ -0,0 +1,174 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import ru.yandex.practicum.filmorate.FilmorateApplication;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * Контекст приложения на отдельной in-memory базе H2, заполненной случайными данными.
+ * Сначала поднимается контекст, который создает схему, база заполняется пакетными вставками,
+ * затем контекст поднимается заново, чтобы индексы в памяти загрузились из заполненной базы.
+ */
+public final class BenchmarkDatabase implements AutoCloseable {
+    private static final int BATCH_SIZE = 5_000;
+
+    private final ConfigurableApplicationContext context;
+    private final int films;
+    private final int users;
+
+    private BenchmarkDatabase(ConfigurableApplicationContext context, int films, int users) {
+        this.context = context;
+        this.films = films;
+        this.users = users;
+    }
+
+    /**
+     * @param films          количество фильмов
+     * @param users          количество пользователей
+     * @param likesPerUser   сколько разных фильмов лайкает каждый пользователь
+     * @param friendsPerUser сколько друзей у каждого пользователя
+     * @param properties     дополнительные свойства приложения в виде key=value
+     */
+    public static BenchmarkDatabase start(int films, int users, int likesPerUser, int friendsPerUser,
+                                          String... properties) {
+        return start("", films, users, likesPerUser, friendsPerUser, properties);
+    }
+
+    /**
+     * @param urlOptions настройки H2, дописываемые к URL базы, например ";QUERY_CACHE_SIZE=0"
+     */
+    public static BenchmarkDatabase start(String urlOptions, int films, int users, int likesPerUser,
+                                          int friendsPerUser, String... properties) {
+        for (String property : properties) {
+            // индексы в памяти (тренды, версии, реплика) при старте читают колонки последних миграций,
+            // поэтому контекст на неполной схеме не поднимется; старую схему нужно строить удалением объектов
+            if (property.startsWith("spring.flyway.target")) {
+                throw new IllegalArgumentException("Бенчмарки работают только на полностью мигрированной базе: "
+                        + property);
+            }
+        }
+        String url = "jdbc:h2:mem:bench" + System.nanoTime() + ";MODE=PostgreSQL;DB_CLOSE_DELAY=-1" + urlOptions;
+        try (ConfigurableApplicationContext schema = context(url, properties)) {
+            seed(schema.getBean(JdbcTemplate.class), films, users, likesPerUser, friendsPerUser);
+        }
+        return new BenchmarkDatabase(context(url, properties), films, users);
+    }
+
+    public <T> T getBean(Class<T> type) {
+        return context.getBean(type);
+    }
+
+    public int films() {
+        return films;
+    }
+
+    public int users() {
+        return users;
+    }
+
+    @Override
+    public void close() {
+        context.getBean(JdbcTemplate.class).execute("SHUTDOWN");
+        context.close();
+    }
+
+    private static ConfigurableApplicationContext context(String url, String... properties) {
+        // аргументами командной строки, а не properties(): те ниже по приоритету, чем application.properties
+        String[] defaults = {
+                "spring.datasource.url=" + url,
+                "spring.main.banner-mode=off",
+                "logging.level.root=WARN"
+        };
+        return new SpringApplicationBuilder(FilmorateApplication.class)
+                .web(WebApplicationType.NONE)
+                .run(Stream.concat(Stream.of(defaults), Stream.of(properties))
+                        .map(property -> "--" + property)
+                        .toArray(String[]::new));
+    }
+
+    private static void seed(JdbcTemplate jdbcTemplate, int films, int users, int likesPerUser, int friendsPerUser) {
+        Random random = new Random(42);
+        List<Object[]> rows = new ArrayList<>();
+        for (int i = 1; i <= users; i++) {
+            rows.add(new Object[]{"user" + i + "@mail.ru", "user" + i, "Пользователь " + i,
+                    Date.valueOf(LocalDate.of(1970, 1, 1).plusDays(random.nextInt(15_000)))});
+            rows = flush(jdbcTemplate, "insert into users(email, login, name, birthday) values (?, ?, ?, ?)", rows);
+        }
+        rows = flush(jdbcTemplate, "insert into users(email, login, name, birthday) values (?, ?, ?, ?)", rows, true);
+
+        long[] likes = new long[films + 1];
+        List<Object[]> likeRows = new ArrayList<>();
+        for (int user = 1; user <= users; user++) {
+            for (int film : distinct(random, films, likesPerUser)) {
+                likes[film]++;
+                likeRows.add(new Object[]{film, user});
+            }
+        }
+        for (int i = 1; i <= films; i++) {
+            rows.add(new Object[]{"Фильм " + i, "Описание фильма " + i,
+                    Date.valueOf(LocalDate.of(1950, 1, 1).plusDays(random.nextInt(27_000))),
+                    60 + random.nextInt(120), 1 + random.nextInt(5), likes[i]});
+            rows = flush(jdbcTemplate, "insert into films(name, description, release_date, duration, mpa_id, " +
+                    "likes_count) values (?, ?, ?, ?, ?, ?)", rows);
+        }
+        rows = flush(jdbcTemplate, "insert into films(name, description, release_date, duration, mpa_id, likes_count) " +
+                "values (?, ?, ?, ?, ?, ?)", rows, true);
+
+        List<Integer> genres = jdbcTemplate.queryForList("select genre_id from genre", Integer.class);
+        for (int film = 1; film <= films; film++) {
+            for (int genre : distinct(random, genres.size(), 1 + random.nextInt(3))) {
+                rows.add(new Object[]{film, genres.get(genre - 1)});
+            }
+            rows = flush(jdbcTemplate, "insert into film_genre(film_id, genre_id) values (?, ?)", rows);
+        }
+        rows = flush(jdbcTemplate, "insert into film_genre(film_id, genre_id) values (?, ?)", rows, true);
+
+        for (Object[] like : likeRows) {
+            rows.add(like);
+            rows = flush(jdbcTemplate, "insert into film_likes(film_id, user_id) values (?, ?)", rows);
+        }
+        rows = flush(jdbcTemplate, "insert into film_likes(film_id, user_id) values (?, ?)", rows, true);
+
+        for (int user = 1; user <= users; user++) {
+            for (int friend : distinct(random, users, friendsPerUser)) {
+                if (friend != user) {
+                    rows.add(new Object[]{user, friend, random.nextBoolean()});
+                }
+            }
+            rows = flush(jdbcTemplate, "insert into friends(user_id, friend_id, status) values (?, ?, ?)", rows);
+        }
+        flush(jdbcTemplate, "insert into friends(user_id, friend_id, status) values (?, ?, ?)", rows, true);
+    }
+
+    private static List<Object[]> flush(JdbcTemplate jdbcTemplate, String sql, List<Object[]> rows) {
+        return flush(jdbcTemplate, sql, rows, false);
+    }
+
+    private static List<Object[]> flush(JdbcTemplate jdbcTemplate, String sql, List<Object[]> rows, boolean force) {
+        if (rows.size() >= BATCH_SIZE || (force && !rows.isEmpty())) {
+            jdbcTemplate.batchUpdate(sql, rows);
+            return new ArrayList<>();
+        }
+        return rows;
+    }
+
+    private static Set<Integer> distinct(Random random, int bound, int count) {
+        Set<Integer> values = new HashSet<>();
+        int limit = Math.min(bound, count);
+        while (values.size() < limit) {
+            values.add(1 + random.nextInt(bound));
+        }
+        return values;
+    }
+}
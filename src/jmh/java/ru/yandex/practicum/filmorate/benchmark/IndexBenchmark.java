@@ -0,0 +1,118 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Запросы по лайкам и друзьям до и после миграции с индексами. База всегда мигрируется до конца,
+ * потому что бины при старте читают колонки поздних миграций; для schema=before объекты V3 -
+ * индексы и UNIQUE(film_id, user_id) - затем удаляются. Планы запросов печатаются при старте.
+ * mvn -Pbenchmark test-compile exec:exec -Djmh.args="IndexBenchmark -p films=100000 -p users=100000"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class IndexBenchmark {
+    private static final String LIKE_EXISTS = "SELECT EXISTS (SELECT * FROM FILM_LIKES WHERE USER_ID = ? AND FILM_ID = ?)";
+    private static final String USER_LIKES = "SELECT FILM_ID FROM FILM_LIKES WHERE USER_ID = ?";
+    private static final String FILM_LIKES = "SELECT USER_ID FROM FILM_LIKES WHERE FILM_ID = ?";
+    private static final String FRIENDS = "SELECT * FROM USERS WHERE ID IN (SELECT FRIEND_ID FROM FRIENDS WHERE USER_ID = ?)";
+    private static final String FOLLOWERS = "SELECT USER_ID FROM FRIENDS WHERE FRIEND_ID = ?";
+    private static final String GENRE_FILMS = "SELECT FILM_ID FROM FILM_GENRE WHERE GENRE_ID = ? LIMIT 100";
+
+    // объекты V3__likes_friends_indexes.sql, без которых схема соответствует состоянию до миграции
+    private static final List<String> DROP_V3 = List.of(
+            "ALTER TABLE FILM_LIKES DROP CONSTRAINT IF EXISTS FILM_LIKES_FILM_USER_UQ",
+            "DROP INDEX IF EXISTS FILM_LIKES_USER_FILM_IDX",
+            "DROP INDEX IF EXISTS FRIENDS_FRIEND_USER_IDX",
+            "DROP INDEX IF EXISTS FILM_GENRE_GENRE_FILM_IDX");
+
+    @Param({"before", "after"})
+    private String schema;
+
+    @Param("10000")
+    private int films;
+
+    @Param("10000")
+    private int users;
+
+    private BenchmarkDatabase database;
+    private JdbcTemplate jdbcTemplate;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        database = BenchmarkDatabase.start(films, users, 20, 20);
+        jdbcTemplate = database.getBean(JdbcTemplate.class);
+        if ("before".equals(schema)) {
+            DROP_V3.forEach(jdbcTemplate::execute);
+        }
+        for (String query : List.of(LIKE_EXISTS, USER_LIKES, FILM_LIKES, FRIENDS, FOLLOWERS, GENRE_FILMS)) {
+            String explain = "EXPLAIN " + query.replace("?", "1");
+            String plan = jdbcTemplate.queryForObject(explain, String.class).replaceAll("\\s+", " ");
+            System.out.println("schema " + schema + ": " + plan);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        database.close();
+    }
+
+    @Benchmark
+    public Boolean likeExists() {
+        return jdbcTemplate.queryForObject(LIKE_EXISTS, Boolean.class, randomUser(), randomFilm());
+    }
+
+    @Benchmark
+    public List<Long> userLikes() {
+        return jdbcTemplate.queryForList(USER_LIKES, Long.class, randomUser());
+    }
+
+    @Benchmark
+    public List<Long> filmLikes() {
+        return jdbcTemplate.queryForList(FILM_LIKES, Long.class, randomFilm());
+    }
+
+    @Benchmark
+    public List<Map<String, Object>> friends() {
+        return jdbcTemplate.queryForList(FRIENDS, randomUser());
+    }
+
+    @Benchmark
+    public List<Long> followers() {
+        return jdbcTemplate.queryForList(FOLLOWERS, Long.class, randomUser());
+    }
+
+    @Benchmark
+    public List<Long> genreFilms() {
+        return jdbcTemplate.queryForList(GENRE_FILMS, Long.class, 1 + ThreadLocalRandom.current().nextInt(6));
+    }
+
+    private long randomFilm() {
+        return 1 + ThreadLocalRandom.current().nextInt(films);
+    }
+
+    private long randomUser() {
+        return 1 + ThreadLocalRandom.current().nextInt(users);
+    }
+}
@@ -0,0 +1,127 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.MPA;
+import ru.yandex.practicum.filmorate.model.NormalizedFilms;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Сериализация списка фильмов в JSON, Smile и CBOR, полным и нормализованным представлением
+ * (view=normalized). Замеряется время записи ответа, нормализация входит в замер.
+ * Размер ответа без сжатия и после gzip печатается при старте.
+ * mvn -Pbenchmark test-compile exec:exec -Djmh.args="SerializationBenchmark"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SerializationBenchmark {
+    private static final String[] GENRES = {"Комедия", "Драма", "Мультфильм", "Триллер", "Документальный", "Боевик"};
+    private static final String[] MPAS = {"G", "PG", "PG-13", "R", "NC-17"};
+    private static final String[] WORDS = {"герой", "город", "ночь", "путь", "тайна", "война", "любовь", "семья",
+            "друг", "море", "детектив", "побег", "история", "время", "мечта", "космос", "дорога", "последний"};
+
+    @Param({"json", "smile", "cbor"})
+    private String format;
+
+    @Param({"full", "normalized"})
+    private String view;
+
+    @Param("1000")
+    private int films;
+
+    private ObjectMapper mapper;
+    private List<Film> payload;
+    private ByteArrayOutputStream out;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        // даты строками, как у маппера Spring Boot
+        Jackson2ObjectMapperBuilder builder = Jackson2ObjectMapperBuilder.json()
+                .featuresToDisable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+        if ("smile".equals(format)) {
+            builder.factory(new SmileFactory());
+        } else if ("cbor".equals(format)) {
+            builder.factory(new CBORFactory());
+        }
+        mapper = builder.build();
+        payload = films(films);
+        out = new ByteArrayOutputStream(1 << 20);
+        int size = write();
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+            out.writeTo(gzip);
+        }
+        System.out.println(format + "/" + view + ": " + size + " байт, gzip " + compressed.size() + " байт");
+    }
+
+    @Benchmark
+    public int write() throws IOException {
+        out.reset();
+        mapper.writeValue(out, "normalized".equals(view) ? NormalizedFilms.of(payload) : payload);
+        return out.size();
+    }
+
+    // фильмы как в ответе /films: описание до 200 символов, 1-3 жанра, у каждого фильма MPA
+    private static List<Film> films(int count) {
+        Random random = new Random(42);
+        List<Film> films = new ArrayList<>(count);
+        for (int i = 1; i <= count; i++) {
+            Set<Genre> genres = new LinkedHashSet<>();
+            for (int g = random.nextInt(3); g >= 0; g--) {
+                int genre = random.nextInt(GENRES.length);
+                genres.add(new Genre((long) genre + 1, GENRES[genre]));
+            }
+            int mpa = random.nextInt(MPAS.length);
+            films.add(Film.builder()
+                    .id((long) i)
+                    .name("Фильм " + i)
+                    .description(description(random))
+                    .releaseDate(LocalDate.of(1950 + random.nextInt(70), 1 + random.nextInt(12), 1))
+                    .duration(60 + random.nextInt(120))
+                    .mpa(new MPA((long) mpa + 1, MPAS[mpa]))
+                    .genres(genres)
+                    .build());
+        }
+        return films;
+    }
+
+    private static String description(Random random) {
+        StringBuilder description = new StringBuilder();
+        int length = 50 + random.nextInt(140);
+        while (description.length() < length) {
+            description.append(WORDS[random.nextInt(WORDS.length)]).append(' ');
+        }
+        return description.toString().trim();
+    }
+}
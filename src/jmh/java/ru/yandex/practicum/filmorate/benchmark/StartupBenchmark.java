@@ -0,0 +1,130 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.BenchmarkParams;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Время от запуска JVM до первого успешного ответа GET /films/popular и RSS процесса после него.
+ * Каждый замер запускает приложение заново из target/cds, поэтому сначала нужна сборка
+ * mvn -Pcds -DskipTests package, затем
+ * mvn -Pbenchmark test-compile exec:exec -Djmh.args="StartupBenchmark"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 5)
+@Fork(1)
+public class StartupBenchmark {
+    private static final Path CDS_DIR = Paths.get("target", "cds");
+    private static final long TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(60);
+
+    @Param({"default", "fast-startup"})
+    private String profile;
+
+    @Param({"false", "true"})
+    private boolean cds;
+
+    private final HttpClient client = HttpClient.newHttpClient();
+    private Path jar;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        try (Stream<Path> files = Files.list(CDS_DIR)) {
+            jar = files.filter(file -> file.getFileName().toString().endsWith("-cds.jar"))
+                    .findFirst()
+                    .orElseThrow(() -> new IllegalStateException("Нет " + CDS_DIR + ", нужна сборка mvn -Pcds package"));
+        }
+    }
+
+    @Benchmark
+    public void timeToFirstRequest(Memory memory, BenchmarkParams params) throws Exception {
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        List<String> command = new ArrayList<>(List.of("java"));
+        if (cds) {
+            command.add("-XX:SharedArchiveFile=" + CDS_DIR.resolve("filmorate.jsa"));
+        }
+        command.addAll(List.of("-jar", jar.toString(),
+                "--server.port=" + port,
+                "--spring.datasource.url=jdbc:h2:mem:startup;MODE=PostgreSQL;DB_CLOSE_DELAY=-1",
+                "--spring.profiles.active=" + profile));
+        Process process = new ProcessBuilder(command)
+                .redirectErrorStream(true)
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                .start();
+        try {
+            HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/films/popular?count=1"))
+                    .build();
+            long deadline = System.nanoTime() + TIMEOUT_NANOS;
+            while (!answered(request)) {
+                if (!process.isAlive() || System.nanoTime() > deadline) {
+                    throw new IllegalStateException("Приложение не ответило, код выхода "
+                            + (process.isAlive() ? "нет" : process.exitValue()));
+                }
+                Thread.sleep(5);
+            }
+            // EVENTS суммируются по итерациям, поэтому в отчете получается среднее RSS за замер
+            memory.rssMb = (double) rssMb(process.pid()) / params.getMeasurement().getCount();
+        } finally {
+            process.destroy();
+            process.waitFor();
+        }
+    }
+
+    private boolean answered(HttpRequest request) throws InterruptedException {
+        try {
+            return client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode() == 200;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    // VmRSS из /proc, поэтому RSS считается только на Linux
+    private static long rssMb(long pid) throws IOException {
+        Path status = Paths.get("/proc", String.valueOf(pid), "status");
+        if (!Files.exists(status)) {
+            return 0;
+        }
+        for (String line : Files.readAllLines(status)) {
+            if (line.startsWith("VmRSS:")) {
+                return Long.parseLong(line.replaceAll("\\D", "")) / 1024;
+            }
+        }
+        return 0;
+    }
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Memory {
+        public double rssMb;
+    }
+}
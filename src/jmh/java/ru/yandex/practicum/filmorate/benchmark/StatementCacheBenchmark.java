@@ -0,0 +1,100 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Нагрузка в 8 потоков на пул соединений: запросы с подставленными в текст значениями
+ * против параметризованных. H2 кеширует разобранные запросы по тексту в каждой сессии
+ * (QUERY_CACHE_SIZE), поэтому запрос со значениями в тексте разбирается заново каждый раз.
+ * mvn -Pbenchmark test-compile exec:exec -Djmh.args="StatementCacheBenchmark"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(8)
+@Fork(1)
+public class StatementCacheBenchmark {
+    private static final String FRIEND_EXISTS = "SELECT EXISTS (SELECT * FROM FRIENDS " +
+            "WHERE USER_ID = ? AND FRIEND_ID = ?)";
+
+    @Param({"0", "64"})
+    private int queryCacheSize;
+
+    @Param("10000")
+    private int users;
+
+    @Param("50")
+    private int idsPerQuery;
+
+    private BenchmarkDatabase database;
+    private JdbcTemplate jdbcTemplate;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        database = BenchmarkDatabase.start(";QUERY_CACHE_SIZE=" + queryCacheSize, 100, users, 0, 20);
+        jdbcTemplate = database.getBean(JdbcTemplate.class);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        database.close();
+    }
+
+    @Benchmark
+    public Boolean friendExistsFormatted() {
+        return jdbcTemplate.queryForObject(String.format("SELECT EXISTS (SELECT * FROM FRIENDS " +
+                "WHERE USER_ID = %d AND FRIEND_ID = %d)", randomUser(), randomUser()), Boolean.class);
+    }
+
+    @Benchmark
+    public Boolean friendExistsParameterized() {
+        return jdbcTemplate.queryForObject(FRIEND_EXISTS, Boolean.class, randomUser(), randomUser());
+    }
+
+    @Benchmark
+    public List<Long> usersInList() {
+        Long[] ids = randomUsers();
+        String placeholders = String.join(",", Collections.nCopies(ids.length, "?"));
+        return jdbcTemplate.queryForList("SELECT ID FROM USERS WHERE ID IN (" + placeholders + ")",
+                Long.class, (Object[]) ids);
+    }
+
+    @Benchmark
+    public List<Long> usersAnyArray() {
+        return jdbcTemplate.queryForList("SELECT ID FROM USERS WHERE ID = ANY(?)", Long.class, (Object) randomUsers());
+    }
+
+    private long randomUser() {
+        return 1 + ThreadLocalRandom.current().nextInt(users);
+    }
+
+    // число id меняется от запроса к запросу, как у страниц друзей и рекомендаций
+    private Long[] randomUsers() {
+        Long[] ids = new Long[1 + ThreadLocalRandom.current().nextInt(idsPerQuery)];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = randomUser();
+        }
+        return ids;
+    }
+}
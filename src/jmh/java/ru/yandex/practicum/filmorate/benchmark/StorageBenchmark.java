@@ -0,0 +1,119 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.yandex.practicum.filmorate.dao.FilmStorage;
+import ru.yandex.practicum.filmorate.dao.UserStorage;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.User;
+
+import java.util.Collection;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Горячие пути хранилищ на заполненной базе. Размер данных задается параметрами, например
+ * mvn -Pbenchmark test-compile exec:exec -Djmh.args="StorageBenchmark -prof gc -p films=100000".
+ * Параметр engine сравнивает хранилища на базе с хранилищами профиля inmemory.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StorageBenchmark {
+    @Param("10000")
+    private int films;
+
+    @Param("10000")
+    private int users;
+
+    @Param("20")
+    private int likesPerUser;
+
+    @Param("20")
+    private int friendsPerUser;
+
+    @Param({"db", "inmemory"})
+    private String engine;
+
+    private BenchmarkDatabase database;
+    private FilmStorage filmStorage;
+    private UserStorage userStorage;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        database = "inmemory".equals(engine)
+                ? BenchmarkDatabase.start(films, users, likesPerUser, friendsPerUser, "spring.profiles.active=inmemory")
+                : BenchmarkDatabase.start(films, users, likesPerUser, friendsPerUser);
+        filmStorage = database.getBean(FilmStorage.class);
+        userStorage = database.getBean(UserStorage.class);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        database.close();
+    }
+
+    @Benchmark
+    public Optional<Film> findFilmById() {
+        return filmStorage.findFilmById(randomFilm());
+    }
+
+    @Benchmark
+    public Collection<Film> findAll() {
+        return filmStorage.findAll();
+    }
+
+    @Benchmark
+    public Collection<Film> getFilmQuantityLike() {
+        return filmStorage.getFilmQuantityLike(10, null, null);
+    }
+
+    @Benchmark
+    public Collection<Film> getFilmQuantityLikeByGenreAndYear() {
+        return filmStorage.getFilmQuantityLike(10, 1L + ThreadLocalRandom.current().nextInt(6),
+                1950 + ThreadLocalRandom.current().nextInt(70));
+    }
+
+    @Benchmark
+    public Collection<Film> filmRecommendations() {
+        return filmStorage.recommendations(randomUser(), 10);
+    }
+
+    @Benchmark
+    public Film addLike() {
+        return filmStorage.addLike(randomFilm(), randomUser());
+    }
+
+    @Benchmark
+    public Collection<User> commonFriends() {
+        return userStorage.commonFriends(randomUser(), randomUser());
+    }
+
+    @Benchmark
+    public Collection<User> getFriends() {
+        return userStorage.getFriends(randomUser());
+    }
+
+    private long randomFilm() {
+        return 1 + ThreadLocalRandom.current().nextInt(films);
+    }
+
+    private long randomUser() {
+        return 1 + ThreadLocalRandom.current().nextInt(users);
+    }
+}
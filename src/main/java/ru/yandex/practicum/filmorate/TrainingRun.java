@@ -0,0 +1,32 @@
+package ru.yandex.practicum.filmorate;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestTemplate;
+
+/**
+ * Пробный запуск для сборки архива классов CDS (профиль сборки cds): после старта приложение
+ * выполняет один запрос к себе, чтобы загрузились и классы обработки запроса, и завершается,
+ * а JVM с -XX:ArchiveClassesAtExit записывает загруженные классы в архив.
+ * Включается свойством filmorate.startup.training-run=true.
+ */
+@Component
+@ConditionalOnProperty(name = "filmorate.startup.training-run", havingValue = "true")
+public class TrainingRun implements ApplicationListener<ApplicationReadyEvent> {
+    private final Logger log = LoggerFactory.getLogger(TrainingRun.class);
+
+    @Override
+    public void onApplicationEvent(ApplicationReadyEvent event) {
+        String port = event.getApplicationContext().getEnvironment().getProperty("local.server.port");
+        if (port != null) {
+            new RestTemplate().getForObject("http://localhost:" + port + "/films/popular?count=1", String.class);
+        }
+        log.info("Пробный запуск завершен");
+        System.exit(SpringApplication.exit(event.getApplicationContext()));
+    }
+}
@@ -0,0 +1,62 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.context.request.async.DeferredResultProcessingInterceptor;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
+import org.springframework.web.method.support.HandlerMethodReturnValueHandler;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+import org.springframework.web.servlet.mvc.method.annotation.RequestMappingHandlerAdapter;
+
+import javax.servlet.http.HttpServletRequest;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Отмечает RequestHandle завершенным, как только асинхронный запрос закончился по тайм-ауту,
+ * ошибке или обычным образом: после этого поток хранилища не трогает запрос и ответ.
+ * Уже завершенные CompletableFuture контроллеров отдаются синхронно, см. CompletedFutureReturnValueHandler.
+ */
+@Configuration
+public class AsyncConfiguration implements WebMvcConfigurer {
+
+    // обработчик должен стоять раньше стандартного обработчика CompletableFuture, поэтому
+    // добавляется в начало списка, а не через addReturnValueHandlers, который добавляет в конец
+    @Bean
+    public SmartInitializingSingleton completedFutureReturnValueHandler(
+            ObjectProvider<RequestMappingHandlerAdapter> adapters) {
+        // без веб-сервера, например в тестах хранилищ, адаптера нет
+        return () -> adapters.ifAvailable(adapter -> {
+            List<HandlerMethodReturnValueHandler> handlers = new ArrayList<>();
+            handlers.add(new CompletedFutureReturnValueHandler(adapter.getReturnValueHandlers()));
+            handlers.addAll(adapter.getReturnValueHandlers());
+            adapter.setReturnValueHandlers(handlers);
+        });
+    }
+
+    @Override
+    public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+        configurer.registerDeferredResultInterceptors(new DeferredResultProcessingInterceptor() {
+            @Override
+            public <T> boolean handleTimeout(NativeWebRequest request, DeferredResult<T> deferredResult) {
+                RequestHandle.complete(request.getNativeRequest(HttpServletRequest.class));
+                return true;
+            }
+
+            @Override
+            public <T> boolean handleError(NativeWebRequest request, DeferredResult<T> deferredResult, Throwable t) {
+                RequestHandle.complete(request.getNativeRequest(HttpServletRequest.class));
+                return true;
+            }
+
+            @Override
+            public <T> void afterCompletion(NativeWebRequest request, DeferredResult<T> deferredResult) {
+                RequestHandle.complete(request.getNativeRequest(HttpServletRequest.class));
+            }
+        });
+    }
+}
@@ -0,0 +1,89 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import org.springframework.core.MethodParameter;
+import org.springframework.core.ResolvableType;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.method.support.HandlerMethodReturnValueHandler;
+import org.springframework.web.method.support.HandlerMethodReturnValueHandlerComposite;
+import org.springframework.web.method.support.ModelAndViewContainer;
+
+import java.lang.reflect.Type;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Отдает результат уже завершенного CompletableFuture сразу, в потоке запроса, обычными
+ * обработчиками ответа. Так в режиме filmorate.async.mode=off контроллеры работают синхронно:
+ * без асинхронной диспетчеризации, повторного прохода фильтров и тайм-аута
+ * spring.mvc.async.request-timeout. Незавершенный future отдается стандартному асинхронному обработчику.
+ */
+final class CompletedFutureReturnValueHandler implements HandlerMethodReturnValueHandler {
+    private final HandlerMethodReturnValueHandlerComposite handlers = new HandlerMethodReturnValueHandlerComposite();
+
+    CompletedFutureReturnValueHandler(List<HandlerMethodReturnValueHandler> handlers) {
+        this.handlers.addHandlers(handlers);
+    }
+
+    @Override
+    public boolean supportsReturnType(MethodParameter returnType) {
+        return CompletableFuture.class.isAssignableFrom(returnType.getParameterType());
+    }
+
+    @Override
+    public void handleReturnValue(Object returnValue, MethodParameter returnType,
+                                  ModelAndViewContainer mavContainer, NativeWebRequest webRequest) throws Exception {
+        CompletableFuture<?> future = (CompletableFuture<?>) returnValue;
+        if (future == null || !future.isDone()) {
+            handlers.handleReturnValue(returnValue, returnType, mavContainer, webRequest);
+            return;
+        }
+        Object result;
+        try {
+            result = future.join();
+        } catch (CompletionException e) {
+            // ошибку сервиса разбирает ErrorHandler, как при синхронном вызове
+            if (e.getCause() instanceof Exception) {
+                throw (Exception) e.getCause();
+            }
+            throw e;
+        }
+        handlers.handleReturnValue(result, new ResultParameter(returnType, result), mavContainer, webRequest);
+    }
+
+    /**
+     * Тип возвращаемого значения метода без обертки CompletableFuture, как его видит асинхронная
+     * обработка после завершения future: ResponseEntity уходит своему обработчику, тело - конвертерам
+     */
+    private static final class ResultParameter extends MethodParameter {
+        private final Object result;
+        private final ResolvableType resultType;
+
+        private ResultParameter(MethodParameter returnType, Object result) {
+            super(returnType);
+            this.result = result;
+            this.resultType = ResolvableType.forMethodParameter(returnType).getGeneric();
+        }
+
+        private ResultParameter(ResultParameter original) {
+            super(original);
+            this.result = original.result;
+            this.resultType = original.resultType;
+        }
+
+        @Override
+        public Class<?> getParameterType() {
+            return result != null ? result.getClass() : resultType.toClass();
+        }
+
+        @Override
+        public Type getGenericParameterType() {
+            return resultType.getType();
+        }
+
+        @Override
+        public ResultParameter clone() {
+            return new ResultParameter(this);
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import java.util.function.Supplier;
+
+/**
+ * Ответ на условный GET по версии ресурса: слабый ETag строится из версии, и если клиент
+ * прислал его в If-None-Match, возвращается 304 без загрузки и сериализации тела.
+ * Версия читается до тела, поэтому при гонке с изменением тело может оказаться новее ETag,
+ * но не наоборот: клиент получит лишний 200, а не устаревший 304.
+ */
+final class ConditionalResponse {
+    private static final String WEAK_PREFIX = "W/";
+
+    private ConditionalResponse() {
+    }
+
+    static <T> ResponseEntity<T> of(String ifNoneMatch, long version, Supplier<T> body) {
+        String etag = WEAK_PREFIX + "\"" + Long.toHexString(version) + "\"";
+        if (matches(ifNoneMatch, etag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+        }
+        return ResponseEntity.ok().eTag(etag).body(body.get());
+    }
+
+    // If-None-Match сравнивается слабо: W/"x" и "x" совпадают, * совпадает с любой версией
+    private static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        String opaque = etag.substring(WEAK_PREFIX.length());
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            if (tag.startsWith(WEAK_PREFIX)) {
+                tag = tag.substring(WEAK_PREFIX.length());
+            }
+            if (tag.equals("*") || tag.equals(opaque)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
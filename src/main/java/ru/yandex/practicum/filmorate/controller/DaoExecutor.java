@@ -0,0 +1,140 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.exception.DaoQueueFullException;
+import ru.yandex.practicum.filmorate.metrics.SqlStatementCounter;
+import ru.yandex.practicum.filmorate.metrics.SqlStatementsInterceptor;
+
+import javax.annotation.PreDestroy;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Выполняет обращения контроллеров к хранилищам вне потоков Tomcat, чтобы число
+ * одновременных запросов ограничивал пул соединений, а не пул потоков сервера.
+ * Режим задается свойством filmorate.async.mode:
+ * off - в потоке запроса: future возвращается уже завершенным, и CompletedFutureReturnValueHandler
+ * отдает ответ сразу, без асинхронной обработки запроса;
+ * platform - в пуле потоков размером с пул соединений и с ограниченной очередью;
+ * virtual - в виртуальных потоках, только на Java 21.
+ */
+@Component
+public class DaoExecutor {
+    private final Logger log = LoggerFactory.getLogger(DaoExecutor.class);
+
+    private final SqlStatementCounter statementCounter;
+    private final ExecutorService executor;
+
+    @Autowired
+    public DaoExecutor(SqlStatementCounter statementCounter,
+                       MeterRegistry registry,
+                       @Value("${filmorate.async.mode:off}") String mode,
+                       @Value("${filmorate.async.threads:${spring.datasource.hikari.maximum-pool-size:10}}") int threads,
+                       @Value("${filmorate.async.queue-capacity:1000}") int queueCapacity) {
+        this.statementCounter = statementCounter;
+        switch (mode) {
+            case "off":
+                this.executor = null;
+                break;
+            case "platform":
+                this.executor = platformExecutor(threads, queueCapacity);
+                break;
+            case "virtual":
+                this.executor = virtualExecutor();
+                break;
+            default:
+                throw new IllegalArgumentException("filmorate.async.mode должен быть off, platform или virtual");
+        }
+        if (executor != null) {
+            new ExecutorServiceMetrics(executor, "filmorate.dao", Tags.empty()).bindTo(registry);
+        }
+        log.info("Обращения к хранилищам: режим {}, потоков {}, очередь {}", mode, threads, queueCapacity);
+    }
+
+    /**
+     * Запускает обращение к хранилищу в выбранном режиме
+     *
+     * @param supplier вызов сервиса
+     * @return результат вызова; ошибка сервиса завершает future исключением
+     */
+    public <T> CompletableFuture<T> supply(Supplier<T> supplier) {
+        if (executor == null) {
+            // SQL-запросы потока запроса считает сам SqlStatementsInterceptor
+            return CompletableFuture.completedFuture(supplier.get());
+        }
+        try {
+            return CompletableFuture.supplyAsync(counted(supplier, RequestHandle.capture()), executor);
+        } catch (RejectedExecutionException e) {
+            log.warn("Очередь обращений к хранилищам заполнена");
+            throw new DaoQueueFullException("Сервис перегружен, повторите запрос позже");
+        }
+    }
+
+    // ответ на CompletableFuture отправляется повторной диспетчеризацией в другом потоке,
+    // поэтому число SQL-запросов передается перехватчику метрик через атрибут запроса;
+    // запрос передается в поток хранилища через RequestHandle, чтобы его видел выбор базы для чтения.
+    // Начатое обращение после тайм-аута не прерывается: прерывание потока закрывает файл H2.
+    private <T> Supplier<T> counted(Supplier<T> supplier, RequestHandle request) {
+        return () -> {
+            if (request != null && request.isCompleted()) {
+                log.warn("Запрос завершился, пока обращение к хранилищу ждало в очереди, обращение отменено");
+                throw new CancellationException("Запрос уже завершен");
+            }
+            RequestHandle previous = RequestHandle.bind(request);
+            statementCounter.reset();
+            try {
+                return supplier.get();
+            } finally {
+                int statements = statementCounter.reset();
+                RequestHandle.bind(previous);
+                if (request != null) {
+                    request.setAttribute(SqlStatementsInterceptor.STATEMENTS_ATTRIBUTE, statements);
+                }
+            }
+        };
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        if (executor != null) {
+            executor.shutdown();
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        }
+    }
+
+    private static ExecutorService platformExecutor(int threads, int queueCapacity) {
+        AtomicInteger number = new AtomicInteger();
+        return new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "dao-" + number.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    // сборка нацелена на Java 11, поэтому фабрика виртуальных потоков вызывается через рефлексию
+    private static ExecutorService virtualExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Виртуальные потоки доступны с Java 21, текущая версия "
+                    + Runtime.version(), e);
+        }
+    }
+}
@@ -1,12 +1,22 @@
 package ru.yandex.practicum.filmorate.controller;
 
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import ru.yandex.practicum.filmorate.model.Film;
 import ru.yandex.practicum.filmorate.service.FilmService;
 
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 import javax.validation.Valid;
+import java.io.IOException;
 import java.util.Collection;
+import java.util.concurrent.CompletableFuture;
 import java.util.Optional;
 
 @RestController
@@ -14,21 +24,30 @@ import java.util.Optional;
 @Slf4j
 public class FilmController {
     private final FilmService filmService;
+    private final ObjectMapper objectMapper;
+    private final DaoExecutor daoExecutor;
 
-    public FilmController(FilmService filmService) {
+    public FilmController(FilmService filmService, ObjectMapper objectMapper, DaoExecutor daoExecutor) {
         this.filmService = filmService;
+        this.objectMapper = objectMapper;
+        this.daoExecutor = daoExecutor;
     }
 
     /**
-     * Принимает из пути id и выводит фильм по этому id
+     * Принимает из пути id и выводит фильм по этому id. Ответ несет ETag по версии фильма,
+     * если он совпал с If-None-Match, фильм не загружается и возвращается 304
      *
-     * @param id id фильма
+     * @param id          id фильма
+     * @param ifNoneMatch ETag, полученный клиентом раньше
      * @return фильм по id
      */
 
     @GetMapping("/{id}")
-    public Optional<Film> findFilmById(@PathVariable Long id) {
-        return filmService.findFilmById(id);
+    public CompletableFuture<ResponseEntity<Optional<Film>>> findFilmById(
+            @PathVariable Long id,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        return daoExecutor.supply(() -> ConditionalResponse.of(ifNoneMatch, filmService.findFilmVersion(id),
+                () -> filmService.findFilmById(id)));
     }
 
     /**
@@ -39,8 +58,26 @@ public class FilmController {
      */
 
     @PostMapping
-    public Film create(@Valid @RequestBody Film film) {
-        return filmService.create(film);
+    public CompletableFuture<Film> create(@Valid @RequestBody Film film) {
+        return daoExecutor.supply(() -> filmService.create(film));
+    }
+
+    /**
+     * Пакетное добавление фильмов: JSON-массив или NDJSON, фильмы читаются из запроса по одному
+     *
+     * @param request запрос с фильмами в теле
+     * @param response ответ в формате NDJSON: строка с id или ошибкой по каждому элементу, которая
+     *                 пишется после сохранения его порции, и последней строкой - счетчики и скорость загрузки;
+     *                 испорченное тело отмечается в итоговой строке (aborted), статус к этому времени уже отправлен
+     */
+
+    @PostMapping(value = "/batch", consumes = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    public void createAll(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        response.setContentType(MediaType.APPLICATION_NDJSON_VALUE);
+        try (MappingIterator<Film> films = objectMapper.readerFor(Film.class).readValues(request.getInputStream())) {
+            NdjsonResponse.write(objectMapper, response.getOutputStream(),
+                    results -> results.accept(filmService.createAll(films, results::accept)));
+        }
     }
 
     /**
@@ -51,19 +88,36 @@ public class FilmController {
      */
 
     @PutMapping
-    public Film update(@Valid @RequestBody Film film) {
-        return filmService.update(film);
+    public CompletableFuture<Film> update(@Valid @RequestBody Film film) {
+        return daoExecutor.supply(() -> filmService.update(film));
     }
 
     /**
-     * Вывод всех добавленные фильмы
+     * Вывод всех добавленные фильмы, либо одной страницы, если передан limit
      *
-     * @return список всех фильмов
+     * @param after id последнего фильма предыдущей страницы
+     * @param limit размер страницы
+     * @return список фильмов
      */
 
     @GetMapping
-    public Collection<Film> findAll() {
-        return filmService.findAll();
+    public CompletableFuture<Collection<Film>> findAll(@RequestParam(required = false) Long after,
+                                                      @RequestParam(required = false) Integer limit) {
+        if (limit == null) {
+            return daoExecutor.supply(filmService::findAll);
+        }
+        return daoExecutor.supply(() -> filmService.findAll(after, limit));
+    }
+
+    /**
+     * Потоковый вывод всех фильмов в формате NDJSON, включается заголовком Accept: application/x-ndjson
+     *
+     * @return тело ответа, которое пишется по мере чтения фильмов из базы
+     */
+
+    @GetMapping(produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamAll() {
+        return NdjsonResponse.of(objectMapper, filmService::streamAll);
     }
 
     /**
@@ -75,8 +129,8 @@ public class FilmController {
      */
 
     @PutMapping("/{id}/like/{userId}")
-    public Film addLike(@PathVariable Long id, @PathVariable Long userId) {
-        return filmService.addLike(id, userId);
+    public CompletableFuture<Film> addLike(@PathVariable Long id, @PathVariable Long userId) {
+        return daoExecutor.supply(() -> filmService.addLike(id, userId));
     }
 
     /**
@@ -88,19 +142,54 @@ public class FilmController {
      */
 
     @DeleteMapping("/{id}/like/{userId}")
-    public Film deleteLike(@PathVariable Long id, @PathVariable Long userId) {
-        return filmService.deleteLike(id, userId);
+    public CompletableFuture<Film> deleteLike(@PathVariable Long id, @PathVariable Long userId) {
+        return daoExecutor.supply(() -> filmService.deleteLike(id, userId));
     }
 
     /**
-     * Выводит фильмы по популярности
+     * Поиск фильмов по словам, в том числе по началу слова
      *
-     * @param count необязательный параметр количества фильмов на вывод
-     * @return фильмы по популярности
+     * @param query строка запроса
+     * @param by    где искать: title, description или title,description
+     * @param limit сколько фильмов вернуть
+     * @return найденные фильмы, первыми совпавшие по большему числу слов, затем более популярные
      */
+    @GetMapping("/search")
+    public CompletableFuture<Collection<Film>> search(@RequestParam String query,
+                                                     @RequestParam(defaultValue = "title,description") String by,
+                                                     @RequestParam(defaultValue = "20") int limit) {
+        return daoExecutor.supply(() -> filmService.search(query, by, limit));
+    }
 
+    /**
+     * Фильмы, набравшие больше всего лайков за последнее время
+     *
+     * @param window окно: 1h, 24h или 7d
+     * @param count  сколько фильмов вернуть
+     * @return фильмы от самого популярного за окно
+     */
+    @GetMapping("/trending")
+    public CompletableFuture<Collection<Film>> getTrending(@RequestParam(defaultValue = "24h") String window,
+                                                          @RequestParam(defaultValue = "10") int count) {
+        return daoExecutor.supply(() -> filmService.trending(window, count));
+    }
+
+    /**
+     * Выводит фильмы по популярности. ETag ответа - общая версия рейтинга популярности
+     *
+     * @param count       необязательный параметр количества фильмов на вывод
+     * @param genreId     необязательный фильтр по жанру
+     * @param year        необязательный фильтр по году выхода
+     * @param ifNoneMatch ETag, полученный клиентом раньше
+     * @return фильмы по популярности
+     */
     @GetMapping("/popular")
-    public Collection<Film> getPopularFilm(@RequestParam(defaultValue = "10", required = false) Integer count) {
-        return filmService.getFilmQuantityLike(count);
+    public CompletableFuture<ResponseEntity<Collection<Film>>> getPopularFilm(
+            @RequestParam(defaultValue = "10", required = false) Integer count,
+            @RequestParam(required = false) Long genreId,
+            @RequestParam(required = false) Integer year,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        return daoExecutor.supply(() -> ConditionalResponse.of(ifNoneMatch, filmService.getPopularVersion(),
+                () -> filmService.getFilmQuantityLike(count, genreId, year)));
     }
 }
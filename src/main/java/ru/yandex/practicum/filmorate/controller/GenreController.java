@@ -1,8 +1,11 @@
 package ru.yandex.practicum.filmorate.controller;
 
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 import ru.yandex.practicum.filmorate.model.Genre;
@@ -22,8 +25,9 @@ public class GenreController {
     }
 
     @GetMapping()
-    public Collection<Genre> findAll() {
-        return genreService.findAll();
+    public ResponseEntity<Collection<Genre>> findAll(
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        return ConditionalResponse.of(ifNoneMatch, genreService.getVersion(), genreService::findAll);
     }
 
     @GetMapping("/{id}")
@@ -0,0 +1,53 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.function.Consumer;
+
+/**
+ * Тело ответа в формате NDJSON: по одному JSON-объекту на строку, объекты пишутся
+ * в ответ сразу по мере получения из хранилища
+ */
+final class NdjsonResponse {
+    private static final int FLUSH_EVERY = 1000;
+
+    private NdjsonResponse() {
+    }
+
+    static <T> ResponseEntity<StreamingResponseBody> of(ObjectMapper objectMapper, Consumer<Consumer<T>> source) {
+        StreamingResponseBody body = out -> write(objectMapper, out, source);
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(body);
+    }
+
+    static <T> void write(ObjectMapper objectMapper, OutputStream out, Consumer<Consumer<T>> source)
+            throws IOException {
+        ObjectWriter writer = objectMapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+            // разделитель строк пишем сами, пробел между корневыми значениями не нужен
+            generator.setRootValueSeparator(null);
+            int[] written = {0};
+            source.accept(item -> {
+                try {
+                    writer.writeValue(generator, item);
+                    generator.writeRaw('\n');
+                    if (++written[0] % FLUSH_EVERY == 0) {
+                        generator.flush();
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import org.springframework.core.MethodParameter;
+import org.springframework.core.ResolvableType;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.json.AbstractJackson2HttpMessageConverter;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.http.server.ServletServerHttpRequest;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyAdvice;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.NormalizedFilms;
+
+import java.util.Collection;
+
+/**
+ * Для методов, возвращающих Collection&lt;Film&gt;, в том числе внутри ResponseEntity,
+ * по параметру view=normalized отдает NormalizedFilms: словари MPA и жанров один раз
+ * на ответ, у фильмов только id.
+ * Работает с любым форматом Jackson - JSON, Smile и CBOR.
+ */
+@RestControllerAdvice
+public class NormalizedFilmsAdvice implements ResponseBodyAdvice<Object> {
+    private static final String VIEW_PARAMETER = "view";
+    private static final String NORMALIZED = "normalized";
+
+    @Override
+    public boolean supports(MethodParameter returnType, Class<? extends HttpMessageConverter<?>> converterType) {
+        if (!AbstractJackson2HttpMessageConverter.class.isAssignableFrom(converterType)) {
+            return false;
+        }
+        // для CompletableFuture здесь уже тип результата, а не самого future
+        ResolvableType type = ResolvableType.forType(returnType.getGenericParameterType());
+        if (HttpEntity.class.isAssignableFrom(type.toClass())) {
+            type = type.as(HttpEntity.class).getGeneric();
+        }
+        return Collection.class.isAssignableFrom(type.toClass())
+                && type.asCollection().resolveGeneric(0) == Film.class;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Object beforeBodyWrite(Object body, MethodParameter returnType, MediaType contentType,
+                                  Class<? extends HttpMessageConverter<?>> converterType,
+                                  ServerHttpRequest request, ServerHttpResponse response) {
+        if (!(body instanceof Collection) || !(request instanceof ServletServerHttpRequest)) {
+            return body;
+        }
+        String view = ((ServletServerHttpRequest) request).getServletRequest().getParameter(VIEW_PARAMETER);
+        if (!NORMALIZED.equals(view)) {
+            return body;
+        }
+        return NormalizedFilms.of((Collection<Film>) body);
+    }
+}
@@ -0,0 +1,113 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * HTTP-запрос, для которого хранилище работает в потоке DaoExecutor. Cookie читаются заранее
+ * в потоке запроса, а атрибуты запроса и cookie ответа пишутся, только пока запрос не завершен:
+ * после тайм-аута spring.mvc.async.request-timeout контейнер отдает объекты запроса и ответа
+ * следующему клиенту, а обращение к хранилищу может еще выполняться.
+ */
+public final class RequestHandle {
+    private static final String ATTRIBUTE = RequestHandle.class.getName();
+    private static final ThreadLocal<RequestHandle> CURRENT = new ThreadLocal<>();
+
+    private final HttpServletRequest request;
+    private final HttpServletResponse response;
+    private final Map<String, String> cookies;
+    private boolean completed;
+
+    private RequestHandle(HttpServletRequest request, HttpServletResponse response) {
+        this.request = request;
+        this.response = response;
+        this.cookies = new HashMap<>();
+        if (request.getCookies() != null) {
+            for (Cookie cookie : request.getCookies()) {
+                cookies.putIfAbsent(cookie.getName(), cookie.getValue());
+            }
+        }
+    }
+
+    /**
+     * @return запрос, переданный в поток DaoExecutor, или запрос текущего потока сервера;
+     * пусто, если поток обслуживает не HTTP-запрос
+     */
+    public static Optional<RequestHandle> current() {
+        RequestHandle handle = CURRENT.get();
+        return handle != null ? Optional.of(handle) : Optional.ofNullable(capture());
+    }
+
+    // вызывается в потоке запроса; для одного запроса всегда один и тот же объект
+    static RequestHandle capture() {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (!(attributes instanceof ServletRequestAttributes)) {
+            return null;
+        }
+        HttpServletRequest request = ((ServletRequestAttributes) attributes).getRequest();
+        Object existing = request.getAttribute(ATTRIBUTE);
+        if (existing instanceof RequestHandle) {
+            return (RequestHandle) existing;
+        }
+        RequestHandle handle = new RequestHandle(request, ((ServletRequestAttributes) attributes).getResponse());
+        request.setAttribute(ATTRIBUTE, handle);
+        return handle;
+    }
+
+    // делает handle текущим для потока и возвращает предыдущий, чтобы его можно было вернуть
+    static RequestHandle bind(RequestHandle handle) {
+        RequestHandle previous = CURRENT.get();
+        if (handle == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(handle);
+        }
+        return previous;
+    }
+
+    // вызывается контейнером при тайм-ауте, ошибке и завершении асинхронного запроса
+    static void complete(HttpServletRequest request) {
+        Object handle = request == null ? null : request.getAttribute(ATTRIBUTE);
+        if (handle instanceof RequestHandle) {
+            ((RequestHandle) handle).complete();
+        }
+    }
+
+    public Optional<String> cookie(String name) {
+        return Optional.ofNullable(cookies.get(name));
+    }
+
+    public synchronized boolean isCompleted() {
+        return completed;
+    }
+
+    /**
+     * Добавляет cookie в ответ, если запрос еще не завершен и ответ не отправлен
+     */
+    public synchronized void addCookie(Cookie cookie) {
+        if (!completed && response != null && !response.isCommitted()) {
+            response.addCookie(cookie);
+        }
+    }
+
+    /**
+     * Записывает атрибут запроса, если запрос еще не завершен
+     */
+    public synchronized void setAttribute(String name, Object value) {
+        if (!completed) {
+            request.setAttribute(name, value);
+        }
+    }
+
+    private synchronized void complete() {
+        completed = true;
+    }
+}
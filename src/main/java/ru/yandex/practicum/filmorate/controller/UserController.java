@@ -1,12 +1,24 @@
 package ru.yandex.practicum.filmorate.controller;
 
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import ru.yandex.practicum.filmorate.model.Film;
 import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.service.FilmService;
 import ru.yandex.practicum.filmorate.service.UserService;
 
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 import javax.validation.Valid;
+import java.io.IOException;
 import java.util.Collection;
+import java.util.concurrent.CompletableFuture;
 
 @RestController
 @RequestMapping("/users")
@@ -14,9 +26,16 @@ import java.util.Collection;
 public class UserController {
 
     private final UserService userService;
+    private final FilmService filmService;
+    private final ObjectMapper objectMapper;
+    private final DaoExecutor daoExecutor;
 
-    public UserController(UserService userService) {
+    public UserController(UserService userService, FilmService filmService, ObjectMapper objectMapper,
+                          DaoExecutor daoExecutor) {
         this.userService = userService;
+        this.filmService = filmService;
+        this.objectMapper = objectMapper;
+        this.daoExecutor = daoExecutor;
     }
 
     /**
@@ -26,8 +45,25 @@ public class UserController {
      * @return созданный пользователь
      */
     @PostMapping
-    public User create(@Valid @RequestBody User user) {
-        return userService.create(user);
+    public CompletableFuture<User> create(@Valid @RequestBody User user) {
+        return daoExecutor.supply(() -> userService.create(user));
+    }
+
+    /**
+     * Пакетное создание пользователей: JSON-массив или NDJSON, пользователи читаются из запроса по одному
+     *
+     * @param request запрос с пользователями в теле
+     * @param response ответ в формате NDJSON: строка с id или ошибкой по каждому элементу, которая
+     *                 пишется после сохранения его порции, и последней строкой - счетчики и скорость загрузки;
+     *                 испорченное тело отмечается в итоговой строке (aborted), статус к этому времени уже отправлен
+     */
+    @PostMapping(value = "/batch", consumes = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    public void createAll(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        response.setContentType(MediaType.APPLICATION_NDJSON_VALUE);
+        try (MappingIterator<User> users = objectMapper.readerFor(User.class).readValues(request.getInputStream())) {
+            NdjsonResponse.write(objectMapper, response.getOutputStream(),
+                    results -> results.accept(userService.createAll(users, results::accept)));
+        }
     }
 
     /**
@@ -37,29 +73,49 @@ public class UserController {
      * @return обновленный пользователь
      */
     @PutMapping
-    public User update(@Valid @RequestBody User user) {
-        return userService.update(user);
+    public CompletableFuture<User> update(@Valid @RequestBody User user) {
+        return daoExecutor.supply(() -> userService.update(user));
     }
 
     /**
-     * Список всех пользователей
+     * Список всех пользователей, либо одна страница, если передан limit
      *
-     * @return лист всех пользователей
+     * @param after id последнего пользователя предыдущей страницы
+     * @param limit размер страницы
+     * @return лист пользователей
      */
     @GetMapping()
-    public Collection<User> findAll() {
-        return userService.findAll();
+    public CompletableFuture<Collection<User>> findAll(@RequestParam(required = false) Long after,
+                                                      @RequestParam(required = false) Integer limit) {
+        if (limit == null) {
+            return daoExecutor.supply(userService::findAll);
+        }
+        return daoExecutor.supply(() -> userService.findAll(after, limit));
     }
 
     /**
-     * Возвращает пользователя по id
+     * Потоковый вывод всех пользователей в формате NDJSON, включается заголовком Accept: application/x-ndjson
      *
-     * @param id id пользователя
+     * @return тело ответа, которое пишется по мере чтения пользователей из базы
+     */
+    @GetMapping(produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamAll() {
+        return NdjsonResponse.of(objectMapper, userService::streamAll);
+    }
+
+    /**
+     * Возвращает пользователя по id, с ETag по версии пользователя и 304 при совпадении If-None-Match
+     *
+     * @param id          id пользователя
+     * @param ifNoneMatch ETag, полученный клиентом раньше
      * @return пользователь
      */
     @GetMapping("/{id}")
-    public User findUserById(@PathVariable Long id) {
-        return userService.findUserById(id);
+    public CompletableFuture<ResponseEntity<User>> findUserById(
+            @PathVariable Long id,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        return daoExecutor.supply(() -> ConditionalResponse.of(ifNoneMatch, userService.findUserVersion(id),
+                () -> userService.findUserById(id)));
     }
 
     /**
@@ -70,13 +126,13 @@ public class UserController {
      * @return пользователь, которому отправили запрос
      */
     @PutMapping("/{id}/friends/{friendId}")
-    public User requestToFriend(@PathVariable Long id, @PathVariable Long friendId) {
-        return userService.requestToFriend(id, friendId);
+    public CompletableFuture<User> requestToFriend(@PathVariable Long id, @PathVariable Long friendId) {
+        return daoExecutor.supply(() -> userService.requestToFriend(id, friendId));
     }
 
     @PutMapping("/{id}/confirmFriend/{friendId}")
-    public User confirmFriend(@PathVariable Long id, @PathVariable Long friendId) {
-        return userService.confirmFriend(id, friendId);
+    public CompletableFuture<User> confirmFriend(@PathVariable Long id, @PathVariable Long friendId) {
+        return daoExecutor.supply(() -> userService.confirmFriend(id, friendId));
     }
 
     /**
@@ -87,8 +143,8 @@ public class UserController {
      * @return удаленный друг
      */
     @DeleteMapping("/{id}/friends/{friendId}")
-    public User deleteFriend(@PathVariable Long id, @PathVariable Long friendId) {
-        return userService.deleteFriend(id, friendId);
+    public CompletableFuture<User> deleteFriend(@PathVariable Long id, @PathVariable Long friendId) {
+        return daoExecutor.supply(() -> userService.deleteFriend(id, friendId));
     }
 
     /**
@@ -98,8 +154,8 @@ public class UserController {
      * @return друзя пользователя
      */
     @GetMapping("/{id}/friends")
-    public Collection<User> getFriends(@PathVariable Long id) {
-        return userService.getFriends(id);
+    public CompletableFuture<Collection<User>> getFriends(@PathVariable Long id) {
+        return daoExecutor.supply(() -> userService.getFriends(id));
     }
 
     /**
@@ -110,7 +166,33 @@ public class UserController {
      * @return общие друзья
      */
     @GetMapping("/{id}/friends/common/{otherId}")
-    public Collection<User> getCommonFriends(@PathVariable Long id, @PathVariable Long otherId) {
-        return userService.commonFriends(id, otherId);
+    public CompletableFuture<Collection<User>> getCommonFriends(@PathVariable Long id, @PathVariable Long otherId) {
+        return daoExecutor.supply(() -> userService.commonFriends(id, otherId));
+    }
+
+    /**
+     * Рекомендации друзей по количеству общих друзей
+     *
+     * @param id    id пользователя
+     * @param limit сколько пользователей вернуть
+     * @return рекомендованные пользователи, первыми те, у кого больше общих друзей
+     */
+    @GetMapping("/{id}/recommendations")
+    public CompletableFuture<Collection<User>> recommendations(@PathVariable Long id,
+                                                              @RequestParam(defaultValue = "10") int limit) {
+        return daoExecutor.supply(() -> userService.recommendations(id, limit));
+    }
+
+    /**
+     * Рекомендации фильмов по лайкам пользователей с похожими вкусами
+     *
+     * @param id    id пользователя
+     * @param limit сколько фильмов вернуть
+     * @return фильмы, которые пользователь еще не лайкал
+     */
+    @GetMapping("/{id}/films/recommended")
+    public CompletableFuture<Collection<Film>> recommendedFilms(@PathVariable Long id,
+                                                               @RequestParam(defaultValue = "10") int limit) {
+        return daoExecutor.supply(() -> filmService.recommendations(id, limit));
     }
 }
@@ -2,22 +2,41 @@ package ru.yandex.practicum.filmorate.dao;
 
 import ru.yandex.practicum.filmorate.model.Film;
 
+import java.time.Duration;
 import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
+import java.util.function.Consumer;
 
 public interface FilmStorage {
 
     Film create(Film film);
 
+    List<Film> createAll(List<Film> films);
+
     Film update(Film film);
 
     Collection<Film> findAll();
 
+    Collection<Film> findAll(long afterId, int limit);
+
+    void streamAll(Consumer<Film> consumer);
+
     Optional<Film> findFilmById(Long id);
 
+    Optional<Long> findFilmVersion(Long id);
+
+    long getPopularVersion();
+
     Film addLike(Long filmId, Long userId);
 
     Film deleteLike(Long filmId, Long userId);
 
-    Collection<Film> getFilmQuantityLike(int count);
+    Collection<Film> getFilmQuantityLike(int count, Long genreId, Integer year);
+
+    Collection<Film> recommendations(Long userId, int limit);
+
+    Collection<Film> search(String query, boolean byTitle, boolean byDescription, int limit);
+
+    Collection<Film> getTrending(Duration window, int count);
 }
\ No newline at end of file
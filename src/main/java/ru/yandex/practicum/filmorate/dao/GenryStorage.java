@@ -10,4 +10,6 @@ public interface GenryStorage {
     Optional<Genre> findGenreById(Long id);
 
     Collection<Genre> findAll();
+
+    long getVersion();
 }
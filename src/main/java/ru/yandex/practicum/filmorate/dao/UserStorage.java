@@ -3,18 +3,28 @@ package ru.yandex.practicum.filmorate.dao;
 import ru.yandex.practicum.filmorate.model.User;
 
 import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
+import java.util.function.Consumer;
 
 public interface UserStorage {
 
     User create(User user);
 
+    List<User> createAll(List<User> users);
+
     User update(User user);
 
     Collection<User> findAll();
 
+    Collection<User> findAll(long afterId, int limit);
+
+    void streamAll(Consumer<User> consumer);
+
     Optional<User> findUserById(Long id);
 
+    Optional<Long> findUserVersion(Long id);
+
     User requestToFriend(Long id, Long friendId);
 
     User confirmFriend(Long confirmUserId, Long sendUserId);
@@ -24,4 +34,6 @@ public interface UserStorage {
     Collection<User> getFriends(Long id);
 
     Collection<User> commonFriends(Long id, Long friendId);
+
+    Collection<User> recommendations(Long id, int limit);
 }
\ No newline at end of file
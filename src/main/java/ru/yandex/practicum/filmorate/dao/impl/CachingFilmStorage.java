@@ -0,0 +1,150 @@
+package ru.yandex.practicum.filmorate.dao.impl;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Primary;
+import org.springframework.context.annotation.Profile;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.dao.FilmStorage;
+import ru.yandex.practicum.filmorate.model.Film;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+/**
+ * Кеш фильмов по id поверх FilmDbStorage. Размер ограничен, записи живут не дольше ttl,
+ * после изменения фильма в кеш кладется его новая версия.
+ * Включается свойством filmorate.cache.entities.enabled=true.
+ */
+@Component
+@Profile("!inmemory")
+@Primary
+@ConditionalOnProperty(name = "filmorate.cache.entities.enabled", havingValue = "true")
+public class CachingFilmStorage implements FilmStorage {
+    private final Logger log = LoggerFactory.getLogger(CachingFilmStorage.class);
+
+    private final FilmDbStorage filmStorage;
+    private final Cache<Long, Film> films;
+
+    @Autowired
+    public CachingFilmStorage(FilmDbStorage filmStorage,
+                              @Value("${filmorate.cache.entities.maximum-size:10000}") long maximumSize,
+                              @Value("${filmorate.cache.entities.ttl-seconds:60}") long ttlSeconds,
+                              MeterRegistry registry) {
+        this.filmStorage = filmStorage;
+        this.films = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                .recordStats()
+                .build();
+        // попадания, промахи и вытеснения видны в метриках cache.* с тегом cache=films
+        CaffeineCacheMetrics.monitor(registry, this.films, "films");
+    }
+
+    public Cache<Long, Film> getCache() {
+        return films;
+    }
+
+    @Override
+    public Optional<Film> findFilmById(Long id) {
+        // отсутствующий фильм не кешируется: FilmDbStorage бросает FilmNotFoundException
+        return Optional.of(films.get(id, key -> filmStorage.findFilmById(key).get()));
+    }
+
+    // версия читается из базы мимо кеша: это поиск по первичному ключу одной колонки
+    @Override
+    public Optional<Long> findFilmVersion(Long id) {
+        return filmStorage.findFilmVersion(id);
+    }
+
+    @Override
+    public long getPopularVersion() {
+        return filmStorage.getPopularVersion();
+    }
+
+    @Override
+    public Film create(Film film) {
+        return cached(filmStorage.create(film));
+    }
+
+    @Override
+    public List<Film> createAll(List<Film> films) {
+        List<Film> created = filmStorage.createAll(films);
+        created.forEach(this::cached);
+        return created;
+    }
+
+    @Override
+    public Film update(Film film) {
+        films.invalidate(film.getId());
+        return cached(filmStorage.update(film));
+    }
+
+    @Override
+    public Collection<Film> findAll() {
+        return filmStorage.findAll();
+    }
+
+    @Override
+    public Collection<Film> findAll(long afterId, int limit) {
+        return filmStorage.findAll(afterId, limit);
+    }
+
+    @Override
+    public void streamAll(Consumer<Film> consumer) {
+        filmStorage.streamAll(consumer);
+    }
+
+    @Override
+    public Film addLike(Long filmId, Long userId) {
+        films.invalidate(filmId);
+        return cached(filmStorage.addLike(filmId, userId));
+    }
+
+    @Override
+    public Film deleteLike(Long filmId, Long userId) {
+        films.invalidate(filmId);
+        return cached(filmStorage.deleteLike(filmId, userId));
+    }
+
+    @Override
+    public Collection<Film> getFilmQuantityLike(int count, Long genreId, Integer year) {
+        return filmStorage.getFilmQuantityLike(count, genreId, year);
+    }
+
+    @Override
+    public Collection<Film> recommendations(Long userId, int limit) {
+        return filmStorage.recommendations(userId, limit);
+    }
+
+    @Override
+    public Collection<Film> search(String query, boolean byTitle, boolean byDescription, int limit) {
+        return filmStorage.search(query, byTitle, byDescription, limit);
+    }
+
+    @Override
+    public Collection<Film> getTrending(Duration window, int count) {
+        return filmStorage.getTrending(window, count);
+    }
+
+    @Scheduled(fixedDelayString = "${filmorate.cache.entities.stats-log-interval-ms:60000}")
+    public void logStats() {
+        log.info("Кеш фильмов: записей {}, {}", films.estimatedSize(), films.stats());
+    }
+
+    private Film cached(Film film) {
+        films.put(film.getId(), film);
+        return film;
+    }
+}
@@ -0,0 +1,148 @@
+package ru.yandex.practicum.filmorate.dao.impl;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Primary;
+import org.springframework.context.annotation.Profile;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.dao.UserStorage;
+import ru.yandex.practicum.filmorate.model.User;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+/**
+ * Кеш пользователей по id поверх UserDbStorage. Размер ограничен, записи живут не дольше ttl,
+ * при изменении пользователя или его друзей записи сбрасываются.
+ * Включается свойством filmorate.cache.entities.enabled=true.
+ */
+@Component
+@Profile("!inmemory")
+@Primary
+@ConditionalOnProperty(name = "filmorate.cache.entities.enabled", havingValue = "true")
+public class CachingUserStorage implements UserStorage {
+    private final Logger log = LoggerFactory.getLogger(CachingUserStorage.class);
+
+    private final UserDbStorage userStorage;
+    private final Cache<Long, User> users;
+
+    @Autowired
+    public CachingUserStorage(UserDbStorage userStorage,
+                              @Value("${filmorate.cache.entities.maximum-size:10000}") long maximumSize,
+                              @Value("${filmorate.cache.entities.ttl-seconds:60}") long ttlSeconds,
+                              MeterRegistry registry) {
+        this.userStorage = userStorage;
+        this.users = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                .recordStats()
+                .build();
+        // попадания, промахи и вытеснения видны в метриках cache.* с тегом cache=users
+        CaffeineCacheMetrics.monitor(registry, this.users, "users");
+    }
+
+    public Cache<Long, User> getCache() {
+        return users;
+    }
+
+    @Override
+    public Optional<User> findUserById(Long id) {
+        // пустой результат не кешируется, чтобы созданный позже пользователь сразу находился
+        return Optional.ofNullable(users.get(id, key -> userStorage.findUserById(key).orElse(null)));
+    }
+
+    @Override
+    public Optional<Long> findUserVersion(Long id) {
+        return userStorage.findUserVersion(id);
+    }
+
+    @Override
+    public User create(User user) {
+        return cached(userStorage.create(user));
+    }
+
+    @Override
+    public List<User> createAll(List<User> users) {
+        List<User> created = userStorage.createAll(users);
+        created.forEach(this::cached);
+        return created;
+    }
+
+    @Override
+    public User update(User user) {
+        users.invalidate(user.getId());
+        return cached(userStorage.update(user));
+    }
+
+    @Override
+    public Collection<User> findAll() {
+        return userStorage.findAll();
+    }
+
+    @Override
+    public Collection<User> findAll(long afterId, int limit) {
+        return userStorage.findAll(afterId, limit);
+    }
+
+    @Override
+    public void streamAll(Consumer<User> consumer) {
+        userStorage.streamAll(consumer);
+    }
+
+    @Override
+    public User requestToFriend(Long id, Long friendId) {
+        users.invalidate(id);
+        users.invalidate(friendId);
+        return cached(userStorage.requestToFriend(id, friendId));
+    }
+
+    @Override
+    public User confirmFriend(Long confirmUserId, Long sendUserId) {
+        users.invalidate(confirmUserId);
+        users.invalidate(sendUserId);
+        return cached(userStorage.confirmFriend(confirmUserId, sendUserId));
+    }
+
+    @Override
+    public User deleteFriend(Long id, Long friendId) {
+        users.invalidate(id);
+        users.invalidate(friendId);
+        return cached(userStorage.deleteFriend(id, friendId));
+    }
+
+    @Override
+    public Collection<User> getFriends(Long id) {
+        return userStorage.getFriends(id);
+    }
+
+    @Override
+    public Collection<User> commonFriends(Long id, Long friendId) {
+        return userStorage.commonFriends(id, friendId);
+    }
+
+    @Override
+    public Collection<User> recommendations(Long id, int limit) {
+        return userStorage.recommendations(id, limit);
+    }
+
+    @Scheduled(fixedDelayString = "${filmorate.cache.entities.stats-log-interval-ms:60000}")
+    public void logStats() {
+        log.info("Кеш пользователей: записей {}, {}", users.estimatedSize(), users.stats());
+    }
+
+    private User cached(User user) {
+        users.put(user.getId(), user);
+        return user;
+    }
+}
@@ -0,0 +1,68 @@
+package ru.yandex.practicum.filmorate.dao.impl;
+
+import ru.yandex.practicum.filmorate.dao.GenryStorage;
+import ru.yandex.practicum.filmorate.dao.MPAStorage;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.MPA;
+
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+
+import static ru.yandex.practicum.filmorate.utilites.Validation.checkGenreExists;
+import static ru.yandex.practicum.filmorate.utilites.Validation.checkMPAExists;
+
+/**
+ * Проверка и подстановка рейтинга и жанров фильма, общая для хранилищ фильмов
+ */
+final class FilmAttributes {
+    private FilmAttributes() {
+    }
+
+    static MPA resolveMpa(MPAStorage mpaStorage, MPA mpa) {
+        if (mpa == null) {
+            return null;
+        }
+        Optional<MPA> found = mpaStorage.findMPAById(mpa.getId());
+        checkMPAExists(found);
+        return found.get();
+    }
+
+    /**
+     * Проверяет, что жанры существуют, и подставляет их названия
+     *
+     * @param genres жанры из запроса, могут быть только с id
+     * @return жанры с названиями, отсортированные по id, без повторов
+     */
+    static Set<Genre> resolveGenres(GenryStorage genryStorage, Set<Genre> genres) {
+        if (genres == null || genres.isEmpty()) {
+            return new LinkedHashSet<>();
+        }
+        Map<Long, Genre> resolved = new TreeMap<>();
+        for (Genre genre : genres) {
+            Optional<Genre> found = genryStorage.findGenreById(genre.getId());
+            checkGenreExists(found);
+            resolved.put(genre.getId(), found.get());
+        }
+        return new LinkedHashSet<>(resolved.values());
+    }
+
+    static Film copyOf(Film film, long id, MPA mpa, Set<Genre> genres) {
+        return Film.builder()
+                .id(id)
+                .name(film.getName())
+                .description(film.getDescription())
+                .releaseDate(film.getReleaseDate())
+                .duration(film.getDuration())
+                .mpa(mpa)
+                .genres(genres)
+                .build();
+    }
+
+    static long[] genreIds(Set<Genre> genres) {
+        return genres.stream().mapToLong(Genre::getId).toArray();
+    }
+}
@@ -1,71 +1,96 @@
 package ru.yandex.practicum.filmorate.dao.impl;
 
+import io.micrometer.core.annotation.Timed;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.jdbc.core.ConnectionCallback;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.support.GeneratedKeyHolder;
 import org.springframework.jdbc.support.KeyHolder;
-import org.springframework.jdbc.support.rowset.SqlRowSet;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import ru.yandex.practicum.filmorate.dao.FilmStorage;
+import ru.yandex.practicum.filmorate.dao.GenryStorage;
+import ru.yandex.practicum.filmorate.dao.MPAStorage;
 import ru.yandex.practicum.filmorate.dao.UserStorage;
+import ru.yandex.practicum.filmorate.dao.index.LikeMatrix;
+import ru.yandex.practicum.filmorate.dao.index.PopularityIndex;
+import ru.yandex.practicum.filmorate.dao.index.SearchIndex;
+import ru.yandex.practicum.filmorate.dao.index.TrendingIndex;
+import ru.yandex.practicum.filmorate.dao.index.ReferenceDataCache;
 import ru.yandex.practicum.filmorate.exception.FilmNotFoundException;
 import ru.yandex.practicum.filmorate.model.Film;
 import ru.yandex.practicum.filmorate.model.Genre;
 import ru.yandex.practicum.filmorate.model.MPA;
 
+import java.sql.Date;
 import java.sql.*;
-import java.util.Collection;
-import java.util.Optional;
-import java.util.Set;
+import java.time.Duration;
+import java.util.*;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
+import static ru.yandex.practicum.filmorate.dao.impl.FilmAttributes.*;
 import static ru.yandex.practicum.filmorate.utilites.Validation.*;
 
 @Component
+@Profile("!inmemory")
+@Timed(value = "filmorate.storage", description = "Время выполнения методов хранилищ")
 public class FilmDbStorage implements FilmStorage {
+    private static final String FILM_SELECT = "SELECT " +
+            "f.id, f.NAME, f.DESCRIPTION, f.RELEASE_DATE, f.DURATION, f.MPA_ID " +
+            "FROM FILMS AS f ";
+    private static final int GENRE_BATCH_SIZE = 1000;
+    private static final int STREAM_FETCH_SIZE = 500;
+
     private final Logger log = LoggerFactory.getLogger(UserDbStorage.class);
 
     private final JdbcTemplate jdbcTemplate;
     private final UserStorage userStorage;
+    private final PopularityIndex popularityIndex;
+    private final LikeMatrix likeMatrix;
+    private final SearchIndex searchIndex;
+    private final TrendingIndex trendingIndex;
+    private final Optional<LikeWriteBehind> likeWriteBehind;
+    private final MPAStorage mpaStorage;
+    private final GenryStorage genryStorage;
+    private final ReferenceDataCache referenceDataCache;
 
     @Autowired
-    public FilmDbStorage(JdbcTemplate jdbcTemplate, UserStorage userStorage) {
+    public FilmDbStorage(JdbcTemplate jdbcTemplate,
+                         UserStorage userStorage,
+                         MPAStorage mpaStorage,
+                         GenryStorage genryStorage,
+                         ReferenceDataCache referenceDataCache,
+                         PopularityIndex popularityIndex,
+                         LikeMatrix likeMatrix,
+                         SearchIndex searchIndex,
+                         TrendingIndex trendingIndex,
+                         Optional<LikeWriteBehind> likeWriteBehind) {
         this.jdbcTemplate = jdbcTemplate;
         this.userStorage = userStorage;
+        this.mpaStorage = mpaStorage;
+        this.genryStorage = genryStorage;
+        this.referenceDataCache = referenceDataCache;
+        this.popularityIndex = popularityIndex;
+        this.likeMatrix = likeMatrix;
+        this.searchIndex = searchIndex;
+        this.trendingIndex = trendingIndex;
+        this.likeWriteBehind = likeWriteBehind;
     }
 
     @Override
     public Optional<Film> findFilmById(Long id) {
         // выполняем запрос к базе данных.
-        SqlRowSet userRows = jdbcTemplate.queryForRowSet("SELECT " +
-                "f.id, f.NAME, f.DESCRIPTION, f.RELEASE_DATE, f.DURATION, f.MPA_ID, m.mpa_NAME " +
-                "FROM FILMS AS f " +
-                "LEFT JOIN MPA AS m ON f.MPA_ID = m.MPA_ID " +
-                "WHERE f.ID = ?", id);
+        List<Film> films = jdbcTemplate.query(FILM_SELECT + "WHERE f.ID = ?", this::mapRowToFilm, id);
 
         // обрабатываем результат выполнения запроса
-        if (userRows.next()) {
-            Film film = Film.builder()
-                    .id(userRows.getLong("id"))
-                    .name(userRows.getString("name"))
-                    .description(userRows.getString("description"))
-                    .releaseDate(userRows.getDate("RELEASE_DATE").toLocalDate())
-                    .duration(userRows.getInt("duration"))
-                    .mpa(new MPA(userRows.getLong("MPA_ID"), userRows.getString("mpa_NAME")))
-                    .genres(Set.of())
-                    .build();
-            String sqlQueryGenre = "SELECT " +
-                    "g.genre_id, g.GENRE_NAME " +
-                    "FROM FILM_GENRE AS fg " +
-                    "LEFT JOIN GENRE AS g ON fg.GENRE_ID  = g.GENRE_ID " +
-                    "WHERE fg.FILM_ID = ? " +
-                    "ORDER BY g.genre_id DESC";
-            film.setGenres(Set.copyOf(jdbcTemplate.query(sqlQueryGenre, this::mapRowToGenre, id))
-                    .stream()
-                    .sorted((g0, g1) -> (int) (g0.getId() - g1.getId()))
-                    .collect(Collectors.toSet()));
+        if (!films.isEmpty()) {
+            Film film = loadGenres(films).get(0);
             log.info("Найден фильм: {} {}", film.getId(), film.getName());
             return Optional.of(film);
         } else {
@@ -75,9 +100,30 @@ public class FilmDbStorage implements FilmStorage {
     }
 
     @Override
+    public Optional<Long> findFilmVersion(Long id) {
+        List<Long> versions = jdbcTemplate.queryForList("SELECT VERSION FROM FILMS WHERE ID = ?", Long.class, id);
+        return versions.stream().findFirst();
+    }
+
+    /**
+     * Версия списка популярных фильмов из самих строк FILMS: любое изменение фильма или его
+     * лайков прибавляет к версии строки, новый фильм добавляет строку, поэтому сумма версий
+     * и число фильмов меняются при каждом изменении, одинаковы на всех экземплярах приложения
+     * и не сбрасываются при перезапуске. Сумма может выйти за bigint, берутся ее младшие 64 бита.
+     */
+    @Override
+    public long getPopularVersion() {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) AS FILMS, COALESCE(SUM(VERSION), 0) AS VERSIONS " +
+                "FROM FILMS", (rs, rowNum) -> rs.getBigDecimal("VERSIONS").longValue() * 31 + rs.getLong("FILMS"));
+    }
+
+    @Override
+    @Transactional
     public Film create(Film film) {
         log.info("Запрос на создания фильма");
         validationFilm(film);
+        MPA mpa = resolveMpa(mpaStorage, film.getMpa());
+        Set<Genre> genres = resolveGenres(genryStorage, film.getGenres());
         String sqlQuery = "insert into films(name, description, RELEASE_DATE, duration, mpa_id) " +
                 "values (?, ?, ?, ?, ?);";
         KeyHolder keyHolder = new GeneratedKeyHolder();
@@ -87,168 +133,366 @@ public class FilmDbStorage implements FilmStorage {
             stmt.setString(2, film.getDescription());
             stmt.setDate(3, Date.valueOf(film.getReleaseDate()));
             stmt.setInt(4, film.getDuration());
-            if (film.getMpa() == null) {
+            if (mpa == null) {
                 stmt.setNull(5, Types.NULL);
             } else {
-                stmt.setLong(5, film.getMpa().getId());
+                stmt.setLong(5, mpa.getId());
             }
             return stmt;
         }, keyHolder);
-        if (film.getGenres() != null) {
-            if (!film.getGenres().isEmpty()) {
-                String sqlQueryGenre = "insert into film_genre(film_id, genre_id) " +
-                        "values (?, ?)";
-                for (Genre genre : film.getGenres()) {
-                    jdbcTemplate.update(sqlQueryGenre,
-                            keyHolder.getKey().longValue(),
-                            genre.getId());
+        long id = keyHolder.getKey().longValue();
+        insertGenres(id, genres);
+        long[] genreIds = genreIds(genres);
+        afterCommit(() -> {
+            popularityIndex.put(id, 0, film.getReleaseDate().getYear(), genreIds);
+            searchIndex.put(id, film.getName(), film.getDescription());
+        });
+        log.info("Фильм c ID {} и название {} добавлен", id, film.getName());
+        return copyOf(film, id, mpa, genres);
+    }
+
+    @Override
+    @Transactional
+    public List<Film> createAll(List<Film> films) {
+        log.info("Запрос на создание {} фильмов", films.size());
+        List<MPA> mpas = new ArrayList<>(films.size());
+        List<Set<Genre>> genres = new ArrayList<>(films.size());
+        for (Film film : films) {
+            validationFilm(film);
+            mpas.add(resolveMpa(mpaStorage, film.getMpa()));
+            genres.add(resolveGenres(genryStorage, film.getGenres()));
+        }
+        String sqlQuery = "insert into films(name, description, RELEASE_DATE, duration, mpa_id) " +
+                "values (?, ?, ?, ?, ?)";
+        List<Long> ids = jdbcTemplate.execute((ConnectionCallback<List<Long>>) connection -> {
+            try (PreparedStatement stmt = connection.prepareStatement(sqlQuery, new String[]{"id"})) {
+                for (int i = 0; i < films.size(); i++) {
+                    Film film = films.get(i);
+                    stmt.setString(1, film.getName());
+                    stmt.setString(2, film.getDescription());
+                    stmt.setDate(3, Date.valueOf(film.getReleaseDate()));
+                    stmt.setInt(4, film.getDuration());
+                    if (mpas.get(i) == null) {
+                        stmt.setNull(5, Types.NULL);
+                    } else {
+                        stmt.setLong(5, mpas.get(i).getId());
+                    }
+                    stmt.addBatch();
+                }
+                stmt.executeBatch();
+                List<Long> keys = new ArrayList<>(films.size());
+                try (ResultSet rs = stmt.getGeneratedKeys()) {
+                    while (rs.next()) {
+                        keys.add(rs.getLong(1));
+                    }
                 }
+                return keys;
             }
+        });
+        List<Object[]> filmGenres = new ArrayList<>();
+        List<Film> created = new ArrayList<>(films.size());
+        for (int i = 0; i < films.size(); i++) {
+            long id = ids.get(i);
+            for (Genre genre : genres.get(i)) {
+                filmGenres.add(new Object[]{id, genre.getId()});
+            }
+            created.add(copyOf(films.get(i), id, mpas.get(i), genres.get(i)));
         }
-        log.info("Фильм c ID {} и название {} добавлен", keyHolder.getKey().longValue(), film.getName());
-        return findFilmById(keyHolder.getKey().longValue()).get();
+        jdbcTemplate.batchUpdate("insert into film_genre(film_id, genre_id) values (?, ?)", filmGenres);
+        afterCommit(() -> {
+            for (int i = 0; i < films.size(); i++) {
+                popularityIndex.put(ids.get(i), 0, films.get(i).getReleaseDate().getYear(), genreIds(genres.get(i)));
+                searchIndex.put(ids.get(i), films.get(i).getName(), films.get(i).getDescription());
+            }
+        });
+        log.info("Добавлено фильмов: {}", created.size());
+        return created;
     }
 
     @Override
+    @Transactional
     public Film update(Film film) {
         log.info("Запрос на обновление фильма");
-        if (findFilmById(film.getId()).isEmpty()) {
-            log.warn("Фильм с ID {} не найден", film.getId());
-            throw new FilmNotFoundException("Фильм с таким ID нет");
-        }
         validationFilm(film);
+        MPA mpa = resolveMpa(mpaStorage, film.getMpa());
         String sqlQuery = "update films set " +
-                "name = ?, description = ?, RELEASE_DATE = ?, duration = ?, mpa_id = ?" +
+                "name = ?, description = ?, RELEASE_DATE = ?, duration = ?, mpa_id = ?, version = version + 1 " +
                 "where id = ?";
-        if (film.getMpa() == null) {
-            jdbcTemplate.update(sqlQuery,
-                    film.getName(),
-                    film.getDescription(),
-                    Date.valueOf(film.getReleaseDate()),
-                    film.getDuration(),
-                    null,
-                    film.getId());
+        int updated = jdbcTemplate.update(sqlQuery,
+                film.getName(),
+                film.getDescription(),
+                Date.valueOf(film.getReleaseDate()),
+                film.getDuration(),
+                mpa == null ? null : mpa.getId(),
+                film.getId());
+        if (updated == 0) {
+            log.warn("Фильм с ID {} не найден", film.getId());
+            throw new FilmNotFoundException("Фильм с таким ID нет");
+        }
+        Set<Genre> genres;
+        if (film.getGenres() == null) {
+            // жанры не переданы - оставляем как есть
+            Film current = Film.builder().id(film.getId()).genres(new LinkedHashSet<>()).build();
+            genres = loadGenres(List.of(current)).get(0).getGenres();
         } else {
-            jdbcTemplate.update(sqlQuery,
-                    film.getName(),
-                    film.getDescription(),
-                    Date.valueOf(film.getReleaseDate()),
-                    film.getDuration(),
-                    film.getMpa().getId(),
-                    film.getId());
-        }
-        if (film.getGenres() != null) {
-            if (!film.getGenres().isEmpty()) {
-                String sqlQueryGenreDelete = "delete from film_genre where film_id = ? ";
-                jdbcTemplate.update(sqlQueryGenreDelete,
-                        film.getId());
-                String sqlQueryGenre = "insert into film_genre(film_id, genre_id) " +
-                        "values (?, ?) " +
-                        "ON CONFLICT DO NOTHING";
-                for (Genre genre : film.getGenres()) {
-                    jdbcTemplate.update(sqlQueryGenre,
-                            film.getId(),
-                            genre.getId());
-                }
-            } else {
-                String sqlQueryGenreDelete = "delete from film_genre where film_id = ? ";
-                jdbcTemplate.update(sqlQueryGenreDelete,
-                        film.getId());
-            }
+            genres = resolveGenres(genryStorage, film.getGenres());
+            updateGenres(film.getId(), genres);
         }
+        long[] genreIds = genreIds(genres);
+        afterCommit(() -> {
+            popularityIndex.updateAttributes(film.getId(), film.getReleaseDate().getYear(), genreIds);
+            searchIndex.put(film.getId(), film.getName(), film.getDescription());
+        });
         log.info("Фильм с ID {} и названием {} обновлен", film.getId(), film.getName());
-        return findFilmById(film.getId()).get();
+        return copyOf(film, film.getId(), mpa, genres);
     }
 
     public Collection<Film> findAll() {
         log.info("Запрос на вывод всех фильмов");
-        String sqlQuery = "SELECT " +
-                "f.id, f.NAME, f.DESCRIPTION, f.RELEASE_DATE, " +
-                "f.DURATION, f.MPA_ID, m.mpa_NAME, ge.GENRE_ID, ge.genre_NAME " +
-                "FROM FILMS AS f " +
-                "LEFT JOIN MPA AS m ON f.MPA_ID = m.MPA_ID " +
-                "LEFT JOIN FILM_GENRE AS g ON f.id = g.FILM_ID " +
-                "LEFT JOIN GENRE AS ge ON g.GENRE_ID = ge.GENRE_ID ";
-        return jdbcTemplate.query(sqlQuery, this::mapRowToEmployee);
+        String sqlQuery = FILM_SELECT + "ORDER BY f.ID";
+        return loadGenres(jdbcTemplate.query(sqlQuery, this::mapRowToFilm));
     }
 
     @Override
+    public Collection<Film> findAll(long afterId, int limit) {
+        log.info("Запрос на вывод фильмов после ID {}, не больше {}", afterId, limit);
+        String sqlQuery = FILM_SELECT +
+                "WHERE f.ID > ? " +
+                "ORDER BY f.ID " +
+                "LIMIT ?";
+        return loadGenres(jdbcTemplate.query(sqlQuery, this::mapRowToFilm, afterId, limit));
+    }
+
+    @Override
+    public void streamAll(Consumer<Film> consumer) {
+        log.info("Запрос на потоковый вывод всех фильмов");
+        String sqlQuery = FILM_SELECT + "ORDER BY f.ID";
+        // фильмы отдаются пачками: жанры подгружаются на пачку, а не держится весь список в памяти
+        List<Film> batch = new ArrayList<>(GENRE_BATCH_SIZE);
+        jdbcTemplate.query(connection -> {
+            PreparedStatement stmt = connection.prepareStatement(sqlQuery);
+            stmt.setFetchSize(STREAM_FETCH_SIZE);
+            return stmt;
+        }, rs -> {
+            batch.add(mapRowToFilm(rs, 0));
+            if (batch.size() == GENRE_BATCH_SIZE) {
+                loadGenres(batch).forEach(consumer);
+                batch.clear();
+            }
+        });
+        loadGenres(batch).forEach(consumer);
+    }
+
+    @Override
+    @Transactional
     public Film addLike(Long filmId, Long userId) {
         log.info("Запрос лайк фильма");
         checkUserExists(userStorage.findUserById(userId));
-        String sqlQuery = "insert into film_likes(film_id, user_id) " +
-                "values (?, ?)";
-        jdbcTemplate.update(sqlQuery,
-                filmId,
-                userId);
+        likeMatrix.checkIds(userId, filmId);
+        if (likeWriteBehind.isPresent()) {
+            Film film = findFilmById(filmId).get();
+            likeWriteBehind.get().like(filmId, userId);
+            log.info("Лайк пользователем с ID {}, фильму с ID {} поставлен в очередь", userId, filmId);
+            return film;
+        }
+        // повторный лайк не вставляется благодаря UNIQUE(film_id, user_id), счетчик не меняется
+        Timestamp likedAt = new Timestamp(System.currentTimeMillis());
+        String sqlQuery = "insert into film_likes(film_id, user_id, created_at) " +
+                "select id, ?, ? from films where id = ? " +
+                "on conflict do nothing";
+        if (jdbcTemplate.update(sqlQuery, userId, likedAt, filmId) == 0) {
+            Film film = findFilmById(filmId).get();
+            log.info("Пользователь с ID {} уже поставил лайк фильму с ID {}", userId, filmId);
+            return film;
+        }
+        sqlQuery = "update films set likes_count = likes_count + 1, version = version + 1 where id = ?";
+        jdbcTemplate.update(sqlQuery, filmId);
+        afterCommit(() -> {
+            popularityIndex.changeLikes(filmId, 1);
+            likeMatrix.add(userId, filmId);
+            trendingIndex.like(filmId, likedAt.getTime());
+        });
         log.info("Лайк пользователем с ID {}, фильму с ID {} поставлен", userId, filmId);
         return findFilmById(filmId).get();
     }
 
     @Override
+    @Transactional
     public Film deleteLike(Long filmId, Long userId) {
         log.info("Запрос на удаление лайка");
-        String sqlQuery = String.format("SELECT EXISTS (SELECT * FROM FILM_LIKES " +
-                "WHERE USER_ID = %d AND FILM_ID = %d);", userId, filmId);
-        checkFriendExists(jdbcTemplate.queryForObject(sqlQuery, Boolean.class));
+        // время лайка нужно, чтобы вычесть его из окон трендов; у незаписанного лайка его нет
+        Optional<Boolean> pending = likeWriteBehind.flatMap(queue -> queue.pendingLike(filmId, userId));
+        Timestamp likedAt = null;
+        if (pending.isPresent()) {
+            checkFriendExists(pending.get());
+        } else {
+            List<Timestamp> likes = jdbcTemplate.queryForList("SELECT CREATED_AT FROM FILM_LIKES " +
+                    "WHERE USER_ID = ? AND FILM_ID = ?", Timestamp.class, userId, filmId);
+            checkFriendExists(!likes.isEmpty());
+            likedAt = likes.get(0);
+        }
         checkUserExists(userStorage.findUserById(userId));
-        sqlQuery = "delete from FILM_LIKES where user_id = ? and FILM_ID = ?";
-        jdbcTemplate.update(sqlQuery, userId, filmId);
+        if (likeWriteBehind.isPresent()) {
+            likeWriteBehind.get().unlike(filmId, userId, likedAt);
+            log.info("Удаление лайка пользователя с ID {}, фильму с ID {} поставлено в очередь", userId, filmId);
+            return findFilmById(filmId).get();
+        }
+        String sqlQuery = "delete from FILM_LIKES where user_id = ? and FILM_ID = ?";
+        int deleted = jdbcTemplate.update(sqlQuery, userId, filmId);
+        sqlQuery = "update films set likes_count = likes_count - ?, version = version + ? where id = ?";
+        jdbcTemplate.update(sqlQuery, deleted, deleted, filmId);
+        Timestamp unlikedAt = likedAt;
+        afterCommit(() -> {
+            popularityIndex.changeLikes(filmId, -deleted);
+            likeMatrix.remove(userId, filmId);
+            if (deleted > 0) {
+                trendingIndex.unlike(filmId, unlikedAt);
+            }
+        });
         log.info("Лайк пользователя с ID {}, фильму с ID {} удален", userId, filmId);
         return findFilmById(filmId).get();
     }
 
-    public Collection<Film> getFilmQuantityLike(int count) {
-        log.info("Запрос на вывод популярных фильмов");
-        String sqlQuery = String.format("SELECT " +
-                "f.id, f.NAME, f.DESCRIPTION, f.RELEASE_DATE, f.DURATION, f.MPA_ID, m.mpa_NAME " +
-                "FROM FILMS AS f " +
-                "LEFT JOIN MPA AS m ON f.MPA_ID = m.MPA_ID " +
-                "LEFT JOIN FILM_LIKES AS fl ON f.id = fl.FILM_ID " +
-                "GROUP BY f.ID " +
-                "ORDER BY COUNT(fl.FILM_ID) DESC " +
-                "LIMIT(%d)", count);
-        return jdbcTemplate.query(sqlQuery, this::mapRowToEmployee);
+    public Collection<Film> getFilmQuantityLike(int count, Long genreId, Integer year) {
+        log.info("Запрос на вывод популярных фильмов, жанр {}, год {}", genreId, year);
+        return findFilmsByIds(popularityIndex.top(count, genreId, year));
     }
 
-    private Genre mapRowToGenre(ResultSet rs, int rowNum) throws SQLException {
-        return Genre.builder()
-                .id(rs.getLong("genre_id"))
-                .name(rs.getString("genre_name"))
-                .build();
+    @Override
+    public Collection<Film> search(String query, boolean byTitle, boolean byDescription, int limit) {
+        log.info("Поиск фильмов по запросу {}", query);
+        return findFilmsByIds(searchIndex.search(query, byTitle, byDescription, limit));
     }
 
-    private Film mapRowToEmployee(ResultSet rs, int rowNum) throws SQLException {
-        String sqlQueryGenre = "SELECT " +
-                "g.genre_id, g.GENRE_NAME " +
-                "FROM FILM_GENRE AS fg " +
-                "LEFT JOIN GENRE AS g ON fg.GENRE_ID  = g.GENRE_ID " +
-                "WHERE fg.FILM_ID = ? " +
-                "ORDER BY g.genre_id DESC";
-        if (rs.getLong("mpa_id") == 0) {
-            return Film.builder()
-                    .id(rs.getLong("id"))
-                    .name(rs.getString("NAME"))
-                    .description(rs.getString("DESCRIPTION"))
-                    .releaseDate(rs.getDate("RELEASE_DATE").toLocalDate())
-                    .duration(rs.getInt("DURATION"))
-                    .genres(Set.of())
-                    .build();
-        } else {
-            return Film.builder()
-                    .id(rs.getLong("id"))
-                    .name(rs.getString("NAME"))
-                    .description(rs.getString("DESCRIPTION"))
-                    .releaseDate(rs.getDate("RELEASE_DATE").toLocalDate())
-                    .duration(rs.getInt("DURATION"))
-                    .mpa(new MPA(rs.getLong("MPA_ID"), rs.getString("mpa_NAME")))
-                    .genres(Set.copyOf(jdbcTemplate.query(sqlQueryGenre,
-                                    this::mapRowToGenre,
-                                    rs.getLong("id")))
-                            .stream()
-                            .sorted((g0, g1) -> (int) (g0.getId() - g1.getId()))
-                            .collect(Collectors.toSet()))
-                    .build();
+    @Override
+    public Collection<Film> getTrending(Duration window, int count) {
+        log.info("Запрос на вывод фильмов в тренде за {}", window);
+        return findFilmsByIds(trendingIndex.top(window, count));
+    }
+
+    @Override
+    public Collection<Film> recommendations(Long userId, int limit) {
+        log.info("Запрос рекомендаций фильмов для пользователя с ID {}", userId);
+        return findFilmsByIds(likeMatrix.recommend(userId, limit));
+    }
+
+    /**
+     * Загружает фильмы с жанрами по списку id
+     *
+     * @param ids id фильмов
+     * @return найденные фильмы в порядке переданных id
+     */
+    private List<Film> findFilmsByIds(List<Long> ids) {
+        Map<Long, Film> filmsById = new HashMap<>();
+        for (int from = 0; from < ids.size(); from += GENRE_BATCH_SIZE) {
+            List<Long> batch = ids.subList(from, Math.min(from + GENRE_BATCH_SIZE, ids.size()));
+            // массив одним параметром: текст запроса не зависит от числа id и берется из кеша H2
+            String sqlQuery = FILM_SELECT +
+                    "WHERE f.ID = ANY(?)";
+            jdbcTemplate.query(sqlQuery, rs -> {
+                Film film = mapRowToFilm(rs, 0);
+                filmsById.put(film.getId(), film);
+            }, (Object) batch.toArray(new Long[0]));
+        }
+        List<Film> films = new ArrayList<>(filmsById.size());
+        for (Long id : ids) {
+            Film film = filmsById.get(id);
+            if (film != null) {
+                films.add(film);
+            }
+        }
+        return loadGenres(films);
+    }
+
+    private void insertGenres(long filmId, Collection<Genre> genres) {
+        String sqlQuery = "insert into film_genre(film_id, genre_id) " +
+                "values (?, ?)";
+        jdbcTemplate.batchUpdate(sqlQuery, genres.stream()
+                .map(genre -> new Object[]{filmId, genre.getId()})
+                .collect(Collectors.toList()));
+    }
+
+    /**
+     * Приводит жанры фильма в базе к переданному набору: удаляет лишние и добавляет недостающие,
+     * не трогая совпадающие
+     *
+     * @param filmId id фильма
+     * @param genres новый набор жанров
+     */
+    private void updateGenres(long filmId, Set<Genre> genres) {
+        Set<Long> current = new HashSet<>(jdbcTemplate.queryForList(
+                "select genre_id from film_genre where film_id = ?", Long.class, filmId));
+        Set<Long> wanted = genres.stream().map(Genre::getId).collect(Collectors.toSet());
+        List<Object[]> removed = current.stream()
+                .filter(genreId -> !wanted.contains(genreId))
+                .map(genreId -> new Object[]{filmId, genreId})
+                .collect(Collectors.toList());
+        if (!removed.isEmpty()) {
+            jdbcTemplate.batchUpdate("delete from film_genre where film_id = ? and genre_id = ?", removed);
+        }
+        insertGenres(filmId, genres.stream()
+                .filter(genre -> !current.contains(genre.getId()))
+                .collect(Collectors.toList()));
+    }
+
+    /**
+     * Подгружает жанры сразу для всего списка фильмов: один запрос на каждые
+     * {@value #GENRE_BATCH_SIZE} фильмов вместо отдельного запроса на каждый фильм
+     *
+     * @param films фильмы без жанров
+     * @return те же фильмы в том же порядке, с заполненными жанрами
+     */
+    private List<Film> loadGenres(List<Film> films) {
+        if (films.isEmpty()) {
+            return films;
+        }
+        Map<Long, Film> filmsById = new HashMap<>();
+        for (Film film : films) {
+            filmsById.put(film.getId(), film);
         }
+        List<Long> ids = new ArrayList<>(filmsById.keySet());
+        for (int from = 0; from < ids.size(); from += GENRE_BATCH_SIZE) {
+            List<Long> batch = ids.subList(from, Math.min(from + GENRE_BATCH_SIZE, ids.size()));
+            String sqlQuery = "SELECT FILM_ID, GENRE_ID " +
+                    "FROM FILM_GENRE " +
+                    "WHERE FILM_ID = ANY(?) " +
+                    "ORDER BY FILM_ID, GENRE_ID";
+            jdbcTemplate.query(sqlQuery, rs -> {
+                long genreId = rs.getLong("GENRE_ID");
+                filmsById.get(rs.getLong("FILM_ID")).getGenres()
+                        .add(referenceDataCache.findGenreById(genreId).orElse(new Genre(genreId, null)));
+            }, (Object) batch.toArray(new Long[0]));
+        }
+        return films;
+    }
+
+    /**
+     * Откладывает изменение индексов до фиксации транзакции: при откате индексы не должны
+     * видеть строк, которых нет в базе. Вне транзакции изменение применяется сразу.
+     */
+    private static void afterCommit(Runnable update) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            update.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                update.run();
+            }
+        });
+    }
+
+    private Film mapRowToFilm(ResultSet rs, int rowNum) throws SQLException {
+        long mpaId = rs.getLong("MPA_ID");
+        return Film.builder()
+                .id(rs.getLong("id"))
+                .name(rs.getString("NAME"))
+                .description(rs.getString("DESCRIPTION"))
+                .releaseDate(rs.getDate("RELEASE_DATE").toLocalDate())
+                .duration(rs.getInt("DURATION"))
+                .mpa(rs.wasNull() ? null : referenceDataCache.findMPAById(mpaId).orElse(new MPA(mpaId, null)))
+                .genres(new LinkedHashSet<>())
+                .build();
     }
 }
@@ -3,14 +3,11 @@ package ru.yandex.practicum.filmorate.dao.impl;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.jdbc.core.JdbcTemplate;
-import org.springframework.jdbc.support.rowset.SqlRowSet;
 import org.springframework.stereotype.Component;
 import ru.yandex.practicum.filmorate.dao.GenryStorage;
+import ru.yandex.practicum.filmorate.dao.index.ReferenceDataCache;
 import ru.yandex.practicum.filmorate.model.Genre;
 
-import java.sql.ResultSet;
-import java.sql.SQLException;
 import java.util.Collection;
 import java.util.Optional;
 
@@ -19,44 +16,33 @@ public class GenreDbStorage implements GenryStorage {
 
     private final Logger log = LoggerFactory.getLogger(UserDbStorage.class);
 
-    private final JdbcTemplate jdbcTemplate;
+    private final ReferenceDataCache referenceDataCache;
 
     @Autowired
-    public GenreDbStorage(JdbcTemplate jdbcTemplate) {
-        this.jdbcTemplate = jdbcTemplate;
+    public GenreDbStorage(ReferenceDataCache referenceDataCache) {
+        this.referenceDataCache = referenceDataCache;
     }
 
     @Override
     public Optional<Genre> findGenreById(Long id) {
-        // выполняем запрос к базе данных.
-        SqlRowSet userRows = jdbcTemplate.queryForRowSet("select * from genre where genre_id = ?", id);
-
-        // обрабатываем результат выполнения запроса
-        if (userRows.next()) {
-            Genre genre = new Genre(
-                    userRows.getLong("genre_id"),
-                    userRows.getString("genre_name"));
-
-            log.info("Найден жанр: {} {}", genre.getId(), genre.getName());
-            return Optional.of(genre);
+        // жанры берутся из справочника в памяти, запроса к базе нет
+        Optional<Genre> genre = referenceDataCache.findGenreById(id);
+        if (genre.isPresent()) {
+            log.info("Найден жанр: {} {}", genre.get().getId(), genre.get().getName());
         } else {
             log.info("жанр с идентификатором {} не найден.", id);
-            return Optional.empty();
         }
+        return genre;
     }
 
     @Override
     public Collection<Genre> findAll() {
         log.info("Запрос на вывод всех жанров");
-        String sqlQuery = "select * from genre  " +
-                "ORDER BY GENRE_ID ";
-        return jdbcTemplate.query(sqlQuery, this::mapRowToEmployee);
+        return referenceDataCache.findAllGenres();
     }
 
-    private Genre mapRowToEmployee(ResultSet rs, int rowNum) throws SQLException {
-        return Genre.builder()
-                .id(rs.getLong("genre_id"))
-                .name(rs.getString("genre_name"))
-                .build();
+    @Override
+    public long getVersion() {
+        return referenceDataCache.genresVersion();
     }
 }
@@ -0,0 +1,483 @@
+package ru.yandex.practicum.filmorate.dao.impl;
+
+import io.micrometer.core.annotation.Timed;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.dao.FilmStorage;
+import ru.yandex.practicum.filmorate.dao.GenryStorage;
+import ru.yandex.practicum.filmorate.dao.MPAStorage;
+import ru.yandex.practicum.filmorate.dao.UserStorage;
+import ru.yandex.practicum.filmorate.dao.index.LikeMatrix;
+import ru.yandex.practicum.filmorate.dao.index.LikeSet;
+import ru.yandex.practicum.filmorate.dao.index.LikeSource;
+import ru.yandex.practicum.filmorate.dao.index.LongTable;
+import ru.yandex.practicum.filmorate.dao.index.PopularityIndex;
+import ru.yandex.practicum.filmorate.dao.index.ReferenceDataCache;
+import ru.yandex.practicum.filmorate.dao.index.SearchIndex;
+import ru.yandex.practicum.filmorate.dao.index.TrendingIndex;
+import ru.yandex.practicum.filmorate.dao.journal.Journaled;
+import ru.yandex.practicum.filmorate.dao.journal.MutationJournal;
+import ru.yandex.practicum.filmorate.dao.journal.Mutations;
+import ru.yandex.practicum.filmorate.exception.FilmNotFoundException;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.MPA;
+
+import javax.annotation.PostConstruct;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import static ru.yandex.practicum.filmorate.dao.impl.FilmAttributes.*;
+import static ru.yandex.practicum.filmorate.utilites.Validation.*;
+
+/**
+ * Хранилище фильмов целиком в памяти, включается профилем inmemory вместо FilmDbStorage.
+ * Фильмы лежат в таблице по id, лайки фильма - в наборе id пользователей на массивах long.
+ * Рейтинги, поиск, тренды и рекомендации берутся из тех же индексов, что и у FilmDbStorage.
+ * Фильм хранится в неизменяемом виде (StoredFilm), чтение идет без блокировок, а наружу
+ * отдается его копия в виде Film: вызывающий код может ее менять, не затрагивая хранимый
+ * фильм, его версию, журнал и индексы. Изменения фильма и его лайков выполняются под одной из
+ * {@value #STRIPES} блокировок, выбранной по id фильма. При старте данные читаются из базы
+ * или из журнала изменений, если он включен; дальше база не используется.
+ * Версии фильмов для ETag в журнал не пишутся: при старте фильмы получают новые версии
+ * из последовательности, которая начинается от времени старта.
+ */
+@Component
+@Profile("inmemory")
+@Timed(value = "filmorate.storage", description = "Время выполнения методов хранилищ")
+public class InMemoryFilmStorage implements FilmStorage, Journaled {
+    private static final int STRIPES = 64;
+
+    private final Logger log = LoggerFactory.getLogger(InMemoryFilmStorage.class);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final UserStorage userStorage;
+    private final MPAStorage mpaStorage;
+    private final GenryStorage genryStorage;
+    private final ReferenceDataCache referenceDataCache;
+    private final PopularityIndex popularityIndex;
+    private final LikeMatrix likeMatrix;
+    private final SearchIndex searchIndex;
+    private final TrendingIndex trendingIndex;
+    private final Optional<MutationJournal> journal;
+    private final LongTable<FilmRecord> films = new LongTable<>();
+    private final Object[] locks = new Object[STRIPES];
+    private final AtomicLong versions = new AtomicLong(System.currentTimeMillis() << 20);
+
+    @Autowired
+    public InMemoryFilmStorage(JdbcTemplate jdbcTemplate,
+                               UserStorage userStorage,
+                               MPAStorage mpaStorage,
+                               GenryStorage genryStorage,
+                               ReferenceDataCache referenceDataCache,
+                               PopularityIndex popularityIndex,
+                               LikeMatrix likeMatrix,
+                               SearchIndex searchIndex,
+                               TrendingIndex trendingIndex,
+                               Optional<MutationJournal> journal) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.userStorage = userStorage;
+        this.mpaStorage = mpaStorage;
+        this.genryStorage = genryStorage;
+        this.referenceDataCache = referenceDataCache;
+        this.popularityIndex = popularityIndex;
+        this.likeMatrix = likeMatrix;
+        this.searchIndex = searchIndex;
+        this.trendingIndex = trendingIndex;
+        this.journal = journal;
+        for (int i = 0; i < STRIPES; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    @PostConstruct
+    public void load() {
+        if (journal.isEmpty()) {
+            loadFromDb();
+            log.info("Фильмы загружены в память: {}", films.size());
+            return;
+        }
+        journal.get().recover(new Replay(), this::loadFromDb);
+        // индексы при старте прочитали базу, а данные могли измениться после нее - строим их заново
+        popularityIndex.clear();
+        searchIndex.clear();
+        films.forEachAfter(0, record -> {
+            StoredFilm film = record.film;
+            popularityIndex.put(film.id, record.likes.size(), film.releaseDate.getYear(), film.genreIds());
+            searchIndex.put(film.id, film.name, film.description);
+            return true;
+        });
+        likeMatrix.load(this::forEachLike);
+        trendingIndex.load(this::forEachLike);
+        log.info("Фильмы загружены в память: {}", films.size());
+    }
+
+    @Override
+    public void snapshot(Mutations out) {
+        films.forEachAfter(0, record -> {
+            long filmId = record.film.id;
+            out.putFilm(record.film.toFilm());
+            // набор лайков нельзя читать во время изменения
+            synchronized (lock(filmId)) {
+                record.likes.forEach((userId, time) -> out.putLike(filmId, userId, time));
+            }
+            return true;
+        });
+    }
+
+    private void forEachLike(LikeSource.LikeConsumer consumer) {
+        films.forEachAfter(0, record -> {
+            long filmId = record.film.id;
+            synchronized (lock(filmId)) {
+                record.likes.forEach((userId, time) -> consumer.accept(filmId, userId, time));
+            }
+            return true;
+        });
+    }
+
+    private void loadFromDb() {
+        Map<Long, Set<Genre>> genres = new HashMap<>();
+        jdbcTemplate.query("SELECT FILM_ID, GENRE_ID FROM FILM_GENRE ORDER BY FILM_ID, GENRE_ID", rs -> {
+            long genreId = rs.getLong("GENRE_ID");
+            genres.computeIfAbsent(rs.getLong("FILM_ID"), key -> new LinkedHashSet<>())
+                    .add(referenceDataCache.findGenreById(genreId).orElse(new Genre(genreId, null)));
+        });
+        jdbcTemplate.query("SELECT ID, NAME, DESCRIPTION, RELEASE_DATE, DURATION, MPA_ID FROM FILMS", rs -> {
+            long id = rs.getLong("ID");
+            long mpaId = rs.getLong("MPA_ID");
+            Film film = Film.builder()
+                    .name(rs.getString("NAME"))
+                    .description(rs.getString("DESCRIPTION"))
+                    .releaseDate(rs.getDate("RELEASE_DATE").toLocalDate())
+                    .duration(rs.getInt("DURATION"))
+                    .build();
+            MPA mpa = rs.wasNull() ? null : referenceDataCache.findMPAById(mpaId).orElse(new MPA(mpaId, null));
+            StoredFilm stored = new StoredFilm(film, id, mpa, genres.getOrDefault(id, Set.of()));
+            films.put(id, new FilmRecord(stored, versions.incrementAndGet()));
+        });
+        int[] likes = {0};
+        jdbcTemplate.query("SELECT FILM_ID, USER_ID, CREATED_AT FROM FILM_LIKES", rs -> {
+            FilmRecord record = films.get(rs.getLong("FILM_ID"));
+            Timestamp likedAt = rs.getTimestamp("CREATED_AT");
+            if (record != null && record.likes.add(rs.getLong("USER_ID"), likedAt == null ? 0 : likedAt.getTime())) {
+                likes[0]++;
+            }
+        });
+        log.info("Из базы загружено лайков: {}", likes[0]);
+    }
+
+    @Override
+    public Optional<Film> findFilmById(Long id) {
+        return Optional.of(record(id).film.toFilm());
+    }
+
+    @Override
+    public Optional<Long> findFilmVersion(Long id) {
+        return Optional.ofNullable(films.get(id)).map(record -> record.version);
+    }
+
+    @Override
+    public long getPopularVersion() {
+        // каждое изменение фильма или его лайков берет следующую версию, последняя выданная меняется при любом
+        return versions.get();
+    }
+
+    @Override
+    public Film create(Film film) {
+        log.info("Запрос на создания фильма");
+        validationFilm(film);
+        MPA mpa = resolveMpa(mpaStorage, film.getMpa());
+        Set<Genre> genres = resolveGenres(genryStorage, film.getGenres());
+        long id = films.nextId();
+        StoredFilm created = new StoredFilm(film, id, mpa, genres);
+        synchronized (lock(id)) {
+            films.put(id, new FilmRecord(created, versions.incrementAndGet()));
+            journal.ifPresent(mutations -> mutations.putFilm(created.toFilm()));
+        }
+        popularityIndex.put(id, 0, film.getReleaseDate().getYear(), genreIds(genres));
+        searchIndex.put(id, film.getName(), film.getDescription());
+        log.info("Фильм c ID {} и название {} добавлен", id, film.getName());
+        return created.toFilm();
+    }
+
+    @Override
+    public List<Film> createAll(List<Film> films) {
+        log.info("Запрос на создание {} фильмов", films.size());
+        // как и в транзакции FilmDbStorage, при ошибке проверки не создается ни один фильм
+        for (Film film : films) {
+            validationFilm(film);
+            resolveMpa(mpaStorage, film.getMpa());
+            resolveGenres(genryStorage, film.getGenres());
+        }
+        List<Film> created = new ArrayList<>(films.size());
+        for (Film film : films) {
+            created.add(create(film));
+        }
+        log.info("Добавлено фильмов: {}", created.size());
+        return created;
+    }
+
+    @Override
+    public Film update(Film film) {
+        log.info("Запрос на обновление фильма");
+        validationFilm(film);
+        MPA mpa = resolveMpa(mpaStorage, film.getMpa());
+        Set<Genre> genres = film.getGenres() == null ? null : resolveGenres(genryStorage, film.getGenres());
+        StoredFilm updated;
+        synchronized (lock(film.getId())) {
+            FilmRecord record = films.get(film.getId());
+            if (record == null) {
+                log.warn("Фильм с ID {} не найден", film.getId());
+                throw new FilmNotFoundException("Фильм с таким ID нет");
+            }
+            // жанры не переданы - оставляем как есть
+            updated = new StoredFilm(film, film.getId(), mpa,
+                    genres == null ? Arrays.asList(record.film.genres) : genres);
+            record.film = updated;
+            record.version = versions.incrementAndGet();
+            journal.ifPresent(mutations -> mutations.putFilm(updated.toFilm()));
+        }
+        popularityIndex.updateAttributes(film.getId(), film.getReleaseDate().getYear(), updated.genreIds());
+        searchIndex.put(film.getId(), film.getName(), film.getDescription());
+        log.info("Фильм с ID {} и названием {} обновлен", film.getId(), film.getName());
+        return updated.toFilm();
+    }
+
+    @Override
+    public Collection<Film> findAll() {
+        log.info("Запрос на вывод всех фильмов");
+        List<Film> all = new ArrayList<>(films.size());
+        films.forEachAfter(0, record -> all.add(record.film.toFilm()));
+        return all;
+    }
+
+    @Override
+    public Collection<Film> findAll(long afterId, int limit) {
+        log.info("Запрос на вывод фильмов после ID {}, не больше {}", afterId, limit);
+        List<Film> page = new ArrayList<>(Math.min(limit, films.size()));
+        films.forEachAfter(afterId, record -> {
+            page.add(record.film.toFilm());
+            return page.size() < limit;
+        });
+        return page;
+    }
+
+    @Override
+    public void streamAll(Consumer<Film> consumer) {
+        log.info("Запрос на потоковый вывод всех фильмов");
+        films.forEachAfter(0, record -> {
+            consumer.accept(record.film.toFilm());
+            return true;
+        });
+    }
+
+    @Override
+    public Film addLike(Long filmId, Long userId) {
+        log.info("Запрос лайк фильма");
+        checkUserExists(userStorage.findUserById(userId));
+        likeMatrix.checkIds(userId, filmId);
+        FilmRecord record = record(filmId);
+        long likedAt = System.currentTimeMillis();
+        // индексы меняются под той же блокировкой, чтобы лайк и его отмена дошли до них в том же порядке
+        synchronized (lock(filmId)) {
+            if (!record.likes.add(userId, likedAt)) {
+                log.info("Пользователь с ID {} уже поставил лайк фильму с ID {}", userId, filmId);
+                return record.film.toFilm();
+            }
+            record.version = versions.incrementAndGet();
+            popularityIndex.changeLikes(filmId, 1);
+            likeMatrix.add(userId, filmId);
+            trendingIndex.like(filmId, likedAt);
+            journal.ifPresent(mutations -> mutations.putLike(filmId, userId, likedAt));
+        }
+        log.info("Лайк пользователем с ID {}, фильму с ID {} поставлен", userId, filmId);
+        return record.film.toFilm();
+    }
+
+    @Override
+    public Film deleteLike(Long filmId, Long userId) {
+        log.info("Запрос на удаление лайка");
+        FilmRecord record = films.get(filmId);
+        synchronized (lock(filmId)) {
+            checkFriendExists(record != null && record.likes.contains(userId));
+            checkUserExists(userStorage.findUserById(userId));
+            long likedAt = record.likes.remove(userId);
+            record.version = versions.incrementAndGet();
+            popularityIndex.changeLikes(filmId, -1);
+            likeMatrix.remove(userId, filmId);
+            trendingIndex.unlike(filmId, new Timestamp(likedAt));
+            journal.ifPresent(mutations -> mutations.removeLike(filmId, userId));
+        }
+        log.info("Лайк пользователя с ID {}, фильму с ID {} удален", userId, filmId);
+        return record.film.toFilm();
+    }
+
+    @Override
+    public Collection<Film> getFilmQuantityLike(int count, Long genreId, Integer year) {
+        log.info("Запрос на вывод популярных фильмов, жанр {}, год {}", genreId, year);
+        return findFilmsByIds(popularityIndex.top(count, genreId, year));
+    }
+
+    @Override
+    public Collection<Film> recommendations(Long userId, int limit) {
+        log.info("Запрос рекомендаций фильмов для пользователя с ID {}", userId);
+        return findFilmsByIds(likeMatrix.recommend(userId, limit));
+    }
+
+    @Override
+    public Collection<Film> search(String query, boolean byTitle, boolean byDescription, int limit) {
+        log.info("Поиск фильмов по запросу {}", query);
+        return findFilmsByIds(searchIndex.search(query, byTitle, byDescription, limit));
+    }
+
+    @Override
+    public Collection<Film> getTrending(Duration window, int count) {
+        log.info("Запрос на вывод фильмов в тренде за {}", window);
+        return findFilmsByIds(trendingIndex.top(window, count));
+    }
+
+    private FilmRecord record(long id) {
+        FilmRecord record = films.get(id);
+        if (record == null) {
+            log.info("фильм с идентификатором {} не найден.", id);
+            throw new FilmNotFoundException("Фильма с таким Id нет");
+        }
+        return record;
+    }
+
+    private List<Film> findFilmsByIds(List<Long> ids) {
+        List<Film> found = new ArrayList<>(ids.size());
+        for (Long id : ids) {
+            FilmRecord record = films.get(id);
+            if (record != null) {
+                found.add(record.film.toFilm());
+            }
+        }
+        return found;
+    }
+
+    private Object lock(long id) {
+        return locks[(int) (id & (STRIPES - 1))];
+    }
+
+
+    /**
+     * Применяет изменения из снимка и журнала; рейтинг и жанры подставляются из справочников
+     */
+    private final class Replay implements Mutations {
+        @Override
+        public void putFilm(Film film) {
+            MPA mpa = film.getMpa() == null ? null : referenceDataCache.findMPAById(film.getMpa().getId())
+                    .orElse(film.getMpa());
+            Set<Genre> genres = new LinkedHashSet<>();
+            for (Genre genre : film.getGenres()) {
+                genres.add(referenceDataCache.findGenreById(genre.getId()).orElse(genre));
+            }
+            StoredFilm resolved = new StoredFilm(film, film.getId(), mpa, genres);
+            FilmRecord record = films.get(film.getId());
+            if (record == null) {
+                films.put(film.getId(), new FilmRecord(resolved, versions.incrementAndGet()));
+            } else {
+                record.film = resolved;
+                record.version = versions.incrementAndGet();
+            }
+        }
+
+        @Override
+        public void putLike(long filmId, long userId, long time) {
+            FilmRecord record = films.get(filmId);
+            if (record != null) {
+                record.likes.add(userId, time);
+            }
+        }
+
+        @Override
+        public void removeLike(long filmId, long userId) {
+            FilmRecord record = films.get(filmId);
+            if (record != null) {
+                record.likes.remove(userId);
+            }
+        }
+    }
+
+    /**
+     * Неизменяемый вид хранимого фильма. Жанры лежат массивом в исходном порядке: копия для
+     * вызывающего кода заполняет набор заранее известного размера без обхода чужого набора.
+     */
+    private static final class StoredFilm {
+        private static final Genre[] NO_GENRES = new Genre[0];
+
+        private final long id;
+        private final String name;
+        private final String description;
+        private final LocalDate releaseDate;
+        private final int duration;
+        private final MPA mpa;
+        private final Genre[] genres;
+
+        private StoredFilm(Film film, long id, MPA mpa, Collection<Genre> genres) {
+            this.id = id;
+            this.name = film.getName();
+            this.description = film.getDescription();
+            this.releaseDate = film.getReleaseDate();
+            this.duration = film.getDuration();
+            this.mpa = mpa;
+            this.genres = genres.toArray(NO_GENRES);
+        }
+
+        private long[] genreIds() {
+            long[] ids = new long[genres.length];
+            for (int i = 0; i < genres.length; i++) {
+                ids[i] = genres[i].getId();
+            }
+            return ids;
+        }
+
+        private Film toFilm() {
+            Set<Genre> copy = new LinkedHashSet<>(genres.length * 2);
+            Collections.addAll(copy, genres);
+            return Film.builder()
+                    .id(id)
+                    .name(name)
+                    .description(description)
+                    .releaseDate(releaseDate)
+                    .duration(duration)
+                    .mpa(mpa)
+                    .genres(copy)
+                    .build();
+        }
+    }
+
+    /**
+     * Фильм и его лайки. Сам фильм не меняется, при обновлении запись получает новый объект;
+     * набор лайков меняется только под блокировкой фильма. Версия меняется после фильма,
+     * поэтому прочитанная до фильма версия не бывает новее самого фильма.
+     */
+    private static final class FilmRecord {
+        private volatile StoredFilm film;
+        private volatile long version;
+        private final LikeSet likes = new LikeSet();
+
+        private FilmRecord(StoredFilm film, long version) {
+            this.film = film;
+            this.version = version;
+        }
+    }
+}
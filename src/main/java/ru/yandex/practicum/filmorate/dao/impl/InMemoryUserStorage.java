@@ -0,0 +1,369 @@
+package ru.yandex.practicum.filmorate.dao.impl;
+
+import io.micrometer.core.annotation.Timed;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.dao.UserStorage;
+import ru.yandex.practicum.filmorate.dao.index.LongTable;
+import ru.yandex.practicum.filmorate.dao.index.MutualFriendsCounter;
+import ru.yandex.practicum.filmorate.dao.index.SortedLongArrays;
+import ru.yandex.practicum.filmorate.dao.journal.Journaled;
+import ru.yandex.practicum.filmorate.dao.journal.MutationJournal;
+import ru.yandex.practicum.filmorate.dao.journal.Mutations;
+import ru.yandex.practicum.filmorate.exception.UserNotFoundException;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.utilites.Validation;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import static ru.yandex.practicum.filmorate.utilites.Validation.*;
+
+/**
+ * Хранилище пользователей целиком в памяти, включается профилем inmemory вместо UserDbStorage.
+ * Пользователь и его друзья лежат в одной неизменяемой записи, записи - в таблице по id.
+ * Чтение идет без блокировок, изменения пользователя выполняются под одной из
+ * {@value #STRIPES} блокировок, выбранной по его id. При старте данные читаются из базы
+ * или из журнала изменений, если он включен; дальше база не используется.
+ */
+@Component
+@Profile("inmemory")
+@Timed(value = "filmorate.storage", description = "Время выполнения методов хранилищ")
+public class InMemoryUserStorage implements UserStorage, Journaled {
+    private static final int STRIPES = 64;
+
+    private final Logger log = LoggerFactory.getLogger(InMemoryUserStorage.class);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final Optional<MutationJournal> journal;
+    private final LongTable<UserRecord> users = new LongTable<>();
+    private final Object[] locks = new Object[STRIPES];
+    // как и у фильмов, версии не журналируются и после перезапуска начинаются от времени старта
+    private final AtomicLong versions = new AtomicLong(System.currentTimeMillis() << 20);
+    private final int maxFanOut;
+
+    @Autowired
+    public InMemoryUserStorage(JdbcTemplate jdbcTemplate,
+                               Optional<MutationJournal> journal,
+                               @Value("${filmorate.recommendations.max-fan-out:1000}") int maxFanOut) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.journal = journal;
+        this.maxFanOut = maxFanOut;
+        for (int i = 0; i < STRIPES; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    @PostConstruct
+    public void load() {
+        if (journal.isPresent()) {
+            journal.get().recover(new Replay(), this::loadFromDb);
+        } else {
+            loadFromDb();
+        }
+        log.info("Пользователи загружены в память: {}", users.size());
+    }
+
+    @Override
+    public void snapshot(Mutations out) {
+        users.forEachAfter(0, record -> {
+            out.putUser(record.user);
+            for (long friendId : record.friends) {
+                out.putFriend(record.user.getId(), friendId, SortedLongArrays.contains(record.confirmed, friendId));
+            }
+            return true;
+        });
+    }
+
+    private void loadFromDb() {
+        Map<Long, List<long[]>> friends = new HashMap<>();
+        jdbcTemplate.query("SELECT USER_ID, FRIEND_ID, STATUS FROM FRIENDS", rs -> {
+            friends.computeIfAbsent(rs.getLong("USER_ID"), key -> new ArrayList<>())
+                    .add(new long[]{rs.getLong("FRIEND_ID"), rs.getBoolean("STATUS") ? 1 : 0});
+        });
+        jdbcTemplate.query("SELECT ID, EMAIL, LOGIN, NAME, BIRTHDAY FROM USERS", rs -> {
+            long id = rs.getLong("ID");
+            UserRecord record = new UserRecord(new User(id,
+                    rs.getString("EMAIL"),
+                    rs.getString("LOGIN"),
+                    rs.getString("NAME"),
+                    rs.getDate("BIRTHDAY").toLocalDate()), versions.incrementAndGet());
+            for (long[] friend : friends.getOrDefault(id, List.of())) {
+                record = record.withFriend(friend[0], friend[1] == 1);
+            }
+            users.put(id, record);
+        });
+    }
+
+    @Override
+    public Optional<User> findUserById(Long id) {
+        UserRecord record = users.get(id);
+        if (record == null) {
+            log.info("Пользователь с идентификатором {} не найден.", id);
+            return Optional.empty();
+        }
+        return Optional.of(copyOf(record.user));
+    }
+
+    @Override
+    public Optional<Long> findUserVersion(Long id) {
+        return Optional.ofNullable(users.get(id)).map(record -> record.version);
+    }
+
+    @Override
+    public User create(User user) {
+        log.info("Запрос на создания пользователя");
+        validationUser(user);
+        long id = users.nextId();
+        User created = new User(id, user.getEmail(), user.getLogin(), user.getName(), user.getBirthday());
+        synchronized (lock(id)) {
+            users.put(id, new UserRecord(created, versions.incrementAndGet()));
+            journal.ifPresent(mutations -> mutations.putUser(created));
+        }
+        log.info("Пользователь с ID {} и почтой {} добавлен", id, user.getEmail());
+        return copyOf(created);
+    }
+
+    @Override
+    public List<User> createAll(List<User> users) {
+        log.info("Запрос на создание {} пользователей", users.size());
+        // как и в транзакции UserDbStorage, при ошибке проверки не создается ни один пользователь
+        users.forEach(Validation::validationUser);
+        List<User> created = new ArrayList<>(users.size());
+        for (User user : users) {
+            created.add(create(user));
+        }
+        log.info("Добавлено пользователей: {}", created.size());
+        return created;
+    }
+
+    @Override
+    public User update(User user) {
+        log.info("Запрос на обновление пользователя");
+        if (users.get(user.getId()) == null) {
+            log.warn("Пользователя с ID {} не найден", user.getId());
+            throw new UserNotFoundException("Пользователя с таким ID нет");
+        }
+        validationUser(user);
+        User updated = new User(user.getId(), user.getEmail(), user.getLogin(), user.getName(), user.getBirthday());
+        synchronized (lock(user.getId())) {
+            UserRecord record = users.get(user.getId());
+            users.put(user.getId(), new UserRecord(updated, record.friends, record.confirmed,
+                    versions.incrementAndGet()));
+            journal.ifPresent(mutations -> mutations.putUser(updated));
+        }
+        log.info("Пользователь с ID {} и почтой {} обновлен", user.getId(), user.getEmail());
+        return copyOf(updated);
+    }
+
+    @Override
+    public Collection<User> findAll() {
+        log.info("Запрос на вывод всех пользователей");
+        List<User> all = new ArrayList<>(users.size());
+        users.forEachAfter(0, record -> all.add(copyOf(record.user)));
+        return all;
+    }
+
+    @Override
+    public Collection<User> findAll(long afterId, int limit) {
+        log.info("Запрос на вывод пользователей после ID {}, не больше {}", afterId, limit);
+        List<User> page = new ArrayList<>(Math.min(limit, users.size()));
+        users.forEachAfter(afterId, record -> {
+            page.add(copyOf(record.user));
+            return page.size() < limit;
+        });
+        return page;
+    }
+
+    @Override
+    public void streamAll(Consumer<User> consumer) {
+        log.info("Запрос на потоковый вывод всех пользователей");
+        users.forEachAfter(0, record -> {
+            consumer.accept(copyOf(record.user));
+            return true;
+        });
+    }
+
+    @Override
+    public User requestToFriend(Long id, Long friendId) {
+        log.info("Запрос на заявку в друзья");
+        Optional<User> friend = findUserById(friendId);
+        checkUserExists(friend);
+        synchronized (lock(id)) {
+            UserRecord record = users.get(id);
+            checkUserExists(Optional.ofNullable(record).map(found -> found.user));
+            // повторная заявка не снимает подтверждение
+            boolean confirmed = SortedLongArrays.contains(record.confirmed, friendId);
+            users.put(id, record.withFriend(friendId, confirmed));
+            journal.ifPresent(mutations -> mutations.putFriend(id, friendId, confirmed));
+        }
+        log.info("Запрос в дурзья от пользователя с ID {} пользователю с ID {} отпарвлен", id, friendId);
+        return friend.get();
+    }
+
+    @Override
+    public User confirmFriend(Long confirmUserId, Long sendUserId) {
+        log.info("Запрос на подтверждение дружбы");
+        synchronized (lock(sendUserId)) {
+            UserRecord record = users.get(sendUserId);
+            checkFriendExists(record != null
+                    && SortedLongArrays.contains(record.friends, confirmUserId)
+                    && !SortedLongArrays.contains(record.confirmed, confirmUserId));
+            users.put(sendUserId, record.withFriend(confirmUserId, true));
+            journal.ifPresent(mutations -> mutations.putFriend(sendUserId, confirmUserId, true));
+        }
+        log.info("Пользователь с ID {} подтвердил заявку в друзья от пользователя с ID {}",
+                confirmUserId,
+                sendUserId);
+        return findUserById(sendUserId).get();
+    }
+
+    @Override
+    public User deleteFriend(Long id, Long friendId) {
+        log.info("Запрос на удаление из друзей");
+        synchronized (lock(id)) {
+            UserRecord record = users.get(id);
+            checkFriendExists(record != null && SortedLongArrays.contains(record.friends, friendId));
+            users.put(id, record.withoutFriend(friendId));
+            journal.ifPresent(mutations -> mutations.removeFriend(id, friendId));
+        }
+        log.info("Пользователь с ID {} удален из друзей пользователя с ID {}", friendId, id);
+        return findUserById(friendId).get();
+    }
+
+    @Override
+    public Collection<User> getFriends(Long id) {
+        log.info("Запрос на вывод друзей");
+        return findUsersByIds(friends(id));
+    }
+
+    @Override
+    public Collection<User> commonFriends(Long id, Long friendId) {
+        log.info("Запрос на вывод общих друзей");
+        if (id.equals(friendId)) {
+            return List.of();
+        }
+        return findUsersByIds(SortedLongArrays.intersect(friends(id), friends(friendId)));
+    }
+
+    /**
+     * Тот же обход на два шага, что и по FriendGraph в UserDbStorage
+     */
+    @Override
+    public Collection<User> recommendations(Long id, int limit) {
+        log.info("Запрос рекомендаций друзей для пользователя с ID {}", id);
+        long[] friends = friends(id);
+        int hops = Math.min(friends.length, maxFanOut);
+        MutualFriendsCounter counter = new MutualFriendsCounter(id, friends, Math.min(hops * 16, 65_536));
+        for (int i = 0; i < hops; i++) {
+            long[] next = friends(friends[i]);
+            int fanOut = Math.min(next.length, maxFanOut);
+            for (int j = 0; j < fanOut; j++) {
+                counter.add(next[j]);
+            }
+        }
+        return findUsersByIds(counter.top(limit));
+    }
+
+    private long[] friends(long id) {
+        UserRecord record = users.get(id);
+        return record == null ? SortedLongArrays.EMPTY : record.friends;
+    }
+
+    private List<User> findUsersByIds(long[] ids) {
+        List<User> found = new ArrayList<>(ids.length);
+        for (long id : ids) {
+            UserRecord record = users.get(id);
+            if (record != null) {
+                found.add(copyOf(record.user));
+            }
+        }
+        return found;
+    }
+
+    private Object lock(long id) {
+        return locks[(int) (id & (STRIPES - 1))];
+    }
+
+    // User изменяемый, наружу отдается копия, чтобы вызывающий код не менял запись хранилища
+    private static User copyOf(User user) {
+        return new User(user.getId(), user.getEmail(), user.getLogin(), user.getName(), user.getBirthday());
+    }
+
+    /**
+     * Применяет изменения из снимка и журнала. Запись в журнал изменений делается под
+     * блокировкой пользователя после изменения, поэтому порядок изменений одного пользователя
+     * в журнале совпадает с порядком их применения.
+     */
+    private final class Replay implements Mutations {
+        @Override
+        public void putUser(User user) {
+            UserRecord record = users.get(user.getId());
+            users.put(user.getId(), record == null
+                    ? new UserRecord(user, versions.incrementAndGet())
+                    : new UserRecord(user, record.friends, record.confirmed, versions.incrementAndGet()));
+        }
+
+        @Override
+        public void putFriend(long userId, long friendId, boolean confirmed) {
+            UserRecord record = users.get(userId);
+            if (record != null) {
+                users.put(userId, record.withFriend(friendId, confirmed));
+            }
+        }
+
+        @Override
+        public void removeFriend(long userId, long friendId) {
+            UserRecord record = users.get(userId);
+            if (record != null) {
+                users.put(userId, record.withoutFriend(friendId));
+            }
+        }
+    }
+
+    /**
+     * Пользователь и его исходящие заявки в друзья: все id друзей и подтвержденные из них,
+     * оба массива отсортированы. Запись не меняется, изменение создает новую.
+     * Версия относится к самому пользователю, заявки в друзья ее не меняют.
+     */
+    private static final class UserRecord {
+        private final User user;
+        private final long[] friends;
+        private final long[] confirmed;
+        private final long version;
+
+        private UserRecord(User user, long version) {
+            this(user, SortedLongArrays.EMPTY, SortedLongArrays.EMPTY, version);
+        }
+
+        private UserRecord(User user, long[] friends, long[] confirmed, long version) {
+            this.user = user;
+            this.friends = friends;
+            this.confirmed = confirmed;
+            this.version = version;
+        }
+
+        private UserRecord withFriend(long friendId, boolean confirmedFriend) {
+            return new UserRecord(user, SortedLongArrays.insert(friends, friendId), confirmedFriend
+                    ? SortedLongArrays.insert(confirmed, friendId)
+                    : SortedLongArrays.remove(confirmed, friendId), version);
+        }
+
+        private UserRecord withoutFriend(long friendId) {
+            return new UserRecord(user, SortedLongArrays.remove(friends, friendId),
+                    SortedLongArrays.remove(confirmed, friendId), version);
+        }
+    }
+}
@@ -0,0 +1,360 @@
+package ru.yandex.practicum.filmorate.dao.impl;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Profile;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.yandex.practicum.filmorate.dao.index.LikeMatrix;
+import ru.yandex.practicum.filmorate.dao.index.PopularityIndex;
+import ru.yandex.practicum.filmorate.dao.index.TrendingIndex;
+import ru.yandex.practicum.filmorate.exception.LikeQueueFullException;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Отложенная запись лайков: addLike/deleteLike только ставят событие в очередь,
+ * а фоновый поток пачками пишет их в FILM_LIKES через batchUpdate.
+ * Включается свойством filmorate.likes.write-behind.enabled=true.
+ * Клиент уже получил ответ на лайк, поэтому пачка, которую не удалось записать, повторяется
+ * с растущей паузой, а после max-retries неудачных попыток события пишутся по одному.
+ * Теряются только события, которые не записались и по одному, они считаются в метрике
+ * filmorate.likes.write-behind.dropped.
+ */
+@Component
+@Profile("!inmemory")
+@ConditionalOnProperty(name = "filmorate.likes.write-behind.enabled", havingValue = "true")
+public class LikeWriteBehind {
+    private final Logger log = LoggerFactory.getLogger(LikeWriteBehind.class);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final PopularityIndex popularityIndex;
+    private final LikeMatrix likeMatrix;
+    private final TrendingIndex trendingIndex;
+    private final BlockingQueue<LikeEvent> queue;
+    // последнее еще не записанное действие по паре фильм-пользователь: true - лайк, false - удаление
+    private final Map<LikeKey, Boolean> pending = new ConcurrentHashMap<>();
+    private final int flushSize;
+    private final long flushIntervalMs;
+    private final long offerTimeoutMs;
+    private final boolean flushOnShutdown;
+    private final int maxRetries;
+    private final long retryBackoffMs;
+    private final Counter retries;
+    private final Counter dropped;
+    private final Thread flusher;
+    private volatile boolean running = true;
+
+    @Autowired
+    public LikeWriteBehind(JdbcTemplate jdbcTemplate,
+                           TransactionTemplate transactionTemplate,
+                           PopularityIndex popularityIndex,
+                           LikeMatrix likeMatrix,
+                           TrendingIndex trendingIndex,
+                           @Value("${filmorate.likes.write-behind.capacity:10000}") int capacity,
+                           @Value("${filmorate.likes.write-behind.flush-size:500}") int flushSize,
+                           @Value("${filmorate.likes.write-behind.flush-interval-ms:200}") long flushIntervalMs,
+                           @Value("${filmorate.likes.write-behind.offer-timeout-ms:1000}") long offerTimeoutMs,
+                           @Value("${filmorate.likes.write-behind.flush-on-shutdown:true}") boolean flushOnShutdown,
+                           @Value("${filmorate.likes.write-behind.max-retries:3}") int maxRetries,
+                           @Value("${filmorate.likes.write-behind.retry-backoff-ms:100}") long retryBackoffMs,
+                           MeterRegistry registry) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.popularityIndex = popularityIndex;
+        this.likeMatrix = likeMatrix;
+        this.trendingIndex = trendingIndex;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.flushSize = flushSize;
+        this.flushIntervalMs = flushIntervalMs;
+        this.offerTimeoutMs = offerTimeoutMs;
+        this.flushOnShutdown = flushOnShutdown;
+        this.maxRetries = maxRetries;
+        this.retryBackoffMs = retryBackoffMs;
+        this.flusher = new Thread(this::run, "like-write-behind");
+        this.flusher.setDaemon(true);
+        Gauge.builder("filmorate.likes.write-behind.queue", queue, BlockingQueue::size)
+                .description("Лайки в очереди на запись")
+                .register(registry);
+        this.retries = Counter.builder("filmorate.likes.write-behind.retries")
+                .description("Повторные попытки записать пачку лайков")
+                .register(registry);
+        this.dropped = Counter.builder("filmorate.likes.write-behind.dropped")
+                .description("События лайков, которые не удалось записать")
+                .register(registry);
+    }
+
+    @PostConstruct
+    public void start() {
+        flusher.start();
+        log.info("Отложенная запись лайков включена: очередь {}, пачка {}, интервал {} мс",
+                queue.remainingCapacity(), flushSize, flushIntervalMs);
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        if (!flushOnShutdown) {
+            flusher.interrupt();
+        }
+        flusher.join();
+        if (!queue.isEmpty()) {
+            log.warn("При остановке не записано лайков: {}", queue.size());
+        }
+    }
+
+    public void like(long filmId, long userId) {
+        submit(new LikeEvent(new LikeKey(filmId, userId), true, new Timestamp(System.currentTimeMillis())));
+    }
+
+    /**
+     * @param likedAt когда был поставлен удаляемый лайк, null если неизвестно
+     */
+    public void unlike(long filmId, long userId, Timestamp likedAt) {
+        submit(new LikeEvent(new LikeKey(filmId, userId), false, likedAt));
+    }
+
+    /**
+     * Состояние лайка с учетом еще не записанных событий
+     *
+     * @param filmId id фильма
+     * @param userId id пользователя
+     * @return true/false, если по паре есть незаписанное событие, иначе пусто и смотреть надо в базу
+     */
+    public Optional<Boolean> pendingLike(long filmId, long userId) {
+        return Optional.ofNullable(pending.get(new LikeKey(filmId, userId)));
+    }
+
+    private void submit(LikeEvent event) {
+        if (!running) {
+            throw new LikeQueueFullException("Сервис останавливается, лайки не принимаются");
+        }
+        pending.put(event.key, event.like);
+        try {
+            if (!queue.offer(event, offerTimeoutMs, TimeUnit.MILLISECONDS)) {
+                pending.remove(event.key, event.like);
+                log.warn("Очередь лайков переполнена");
+                throw new LikeQueueFullException("Слишком много лайков, повторите позже");
+            }
+        } catch (InterruptedException e) {
+            pending.remove(event.key, event.like);
+            Thread.currentThread().interrupt();
+            throw new LikeQueueFullException("Лайк не принят");
+        }
+    }
+
+    private void run() {
+        List<LikeEvent> batch = new ArrayList<>(flushSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                LikeEvent first = queue.poll(flushIntervalMs, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(flushIntervalMs);
+                while (batch.size() < flushSize) {
+                    queue.drainTo(batch, flushSize - batch.size());
+                    long remaining = deadline - System.nanoTime();
+                    if (batch.size() >= flushSize || remaining <= 0) {
+                        break;
+                    }
+                    LikeEvent next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+            } catch (InterruptedException e) {
+                if (running || flushOnShutdown) {
+                    continue;
+                }
+                break;
+            }
+            flush(batch);
+            batch.clear();
+        }
+        flush(batch);
+    }
+
+    private void flush(List<LikeEvent> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        // по каждой паре фильм-пользователь важно только последнее действие
+        Map<LikeKey, LikeEvent> coalesced = new LinkedHashMap<>();
+        for (LikeEvent event : batch) {
+            coalesced.remove(event.key);
+            coalesced.put(event.key, event);
+        }
+        List<LikeEvent> events = new ArrayList<>(coalesced.values());
+        boolean interrupted = false;
+        try {
+            try {
+                if (writeWithRetries(events)) {
+                    return;
+                }
+            } catch (InterruptedException e) {
+                // пауза прервана остановкой: повторы не ждем, но события еще пробуем записать
+                interrupted = true;
+            }
+            int lost = 0;
+            for (LikeEvent event : events) {
+                try {
+                    write(List.of(event));
+                } catch (RuntimeException e) {
+                    lost++;
+                    dropped.increment();
+                    log.error("Событие лайка потеряно: фильм {}, пользователь {}, лайк {}",
+                            event.key.filmId, event.key.userId, event.like, e);
+                }
+            }
+            log.warn("Пачка из {} событий лайков записана по одному, потеряно: {}", events.size(), lost);
+        } finally {
+            // пока пачка не записана или не признана потерянной, pendingLike видит ее события
+            coalesced.forEach((key, event) -> pending.remove(key, event.like));
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * @return true, если пачка записана, false - если все попытки неудачны
+     */
+    private boolean writeWithRetries(List<LikeEvent> events) throws InterruptedException {
+        long backoff = retryBackoffMs;
+        for (int attempt = 0; ; attempt++) {
+            try {
+                write(events);
+                return true;
+            } catch (RuntimeException e) {
+                if (attempt >= maxRetries) {
+                    log.error("Не удалось записать пачку из {} событий лайков за {} попыток",
+                            events.size(), attempt + 1, e);
+                    return false;
+                }
+                log.warn("Не удалось записать пачку из {} событий лайков, повтор через {} мс: {}",
+                        events.size(), backoff, e.toString());
+            }
+            retries.increment();
+            TimeUnit.MILLISECONDS.sleep(backoff);
+            backoff *= 2;
+        }
+    }
+
+    // пишет события одной транзакцией; при ошибке транзакция откатывается и индексы не меняются
+    private void write(List<LikeEvent> events) {
+        List<Object[]> inserts = new ArrayList<>();
+        List<Object[]> deletes = new ArrayList<>();
+        List<LikeEvent> insertEvents = new ArrayList<>();
+        List<LikeEvent> deleteEvents = new ArrayList<>();
+        for (LikeEvent event : events) {
+            if (event.like) {
+                inserts.add(new Object[]{event.key.filmId, event.key.userId, event.time});
+                insertEvents.add(event);
+            } else {
+                deletes.add(new Object[]{event.key.userId, event.key.filmId});
+                deleteEvents.add(event);
+            }
+        }
+        // события, которые действительно изменили FILM_LIKES
+        List<LikeEvent> applied = new ArrayList<>();
+        Map<Long, Long> deltas = transactionTemplate.execute(status -> {
+            Map<Long, Long> likesDelta = new HashMap<>();
+            int[] inserted = jdbcTemplate.batchUpdate("insert into film_likes(film_id, user_id, created_at) " +
+                    "values (?, ?, ?) on conflict do nothing", inserts);
+            for (int i = 0; i < inserted.length; i++) {
+                if (inserted[i] > 0) {
+                    applied.add(insertEvents.get(i));
+                }
+                likesDelta.merge(insertEvents.get(i).key.filmId, (long) Math.max(inserted[i], 0), Long::sum);
+            }
+            int[] deleted = jdbcTemplate.batchUpdate(
+                    "delete from FILM_LIKES where user_id = ? and FILM_ID = ?", deletes);
+            for (int i = 0; i < deleted.length; i++) {
+                if (deleted[i] > 0) {
+                    applied.add(deleteEvents.get(i));
+                }
+                likesDelta.merge(deleteEvents.get(i).key.filmId, (long) -Math.max(deleted[i], 0), Long::sum);
+            }
+            List<Object[]> counters = new ArrayList<>(likesDelta.size());
+            likesDelta.forEach((filmId, delta) -> counters.add(new Object[]{delta, filmId}));
+            jdbcTemplate.batchUpdate(
+                    "update films set likes_count = likes_count + ?, version = version + 1 where id = ?", counters);
+            return likesDelta;
+        });
+        Objects.requireNonNull(deltas).forEach(popularityIndex::changeLikes);
+        for (LikeEvent event : applied) {
+            if (event.like) {
+                likeMatrix.add(event.key.userId, event.key.filmId);
+                trendingIndex.like(event.key.filmId, event.time.getTime());
+            } else {
+                likeMatrix.remove(event.key.userId, event.key.filmId);
+                trendingIndex.unlike(event.key.filmId, event.time);
+            }
+        }
+        log.info("Записано лайков: {}, удалено: {}", inserts.size(), deletes.size());
+    }
+
+    private static final class LikeKey {
+        private final long filmId;
+        private final long userId;
+
+        private LikeKey(long filmId, long userId) {
+            this.filmId = filmId;
+            this.userId = userId;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof LikeKey)) {
+                return false;
+            }
+            LikeKey other = (LikeKey) o;
+            return filmId == other.filmId && userId == other.userId;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(filmId) * 31 + Long.hashCode(userId);
+        }
+    }
+
+    private static final class LikeEvent {
+        private final LikeKey key;
+        private final boolean like;
+        // для лайка - время лайка, для удаления - время удаляемого лайка или null
+        private final Timestamp time;
+
+        private LikeEvent(LikeKey key, boolean like, Timestamp time) {
+            this.key = key;
+            this.like = like;
+            this.time = time;
+        }
+    }
+}
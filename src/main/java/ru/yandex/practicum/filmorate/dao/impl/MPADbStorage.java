@@ -3,14 +3,11 @@ package ru.yandex.practicum.filmorate.dao.impl;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.jdbc.core.JdbcTemplate;
-import org.springframework.jdbc.support.rowset.SqlRowSet;
 import org.springframework.stereotype.Component;
 import ru.yandex.practicum.filmorate.dao.MPAStorage;
+import ru.yandex.practicum.filmorate.dao.index.ReferenceDataCache;
 import ru.yandex.practicum.filmorate.model.MPA;
 
-import java.sql.ResultSet;
-import java.sql.SQLException;
 import java.util.Collection;
 import java.util.Optional;
 
@@ -19,44 +16,28 @@ public class MPADbStorage implements MPAStorage {
 
     private final Logger log = LoggerFactory.getLogger(UserDbStorage.class);
 
-    private final JdbcTemplate jdbcTemplate;
+    private final ReferenceDataCache referenceDataCache;
 
     @Autowired
-    public MPADbStorage(JdbcTemplate jdbcTemplate) {
-        this.jdbcTemplate = jdbcTemplate;
+    public MPADbStorage(ReferenceDataCache referenceDataCache) {
+        this.referenceDataCache = referenceDataCache;
     }
 
     @Override
     public Optional<MPA> findMPAById(Long id) {
-        // выполняем запрос к базе данных.
-        SqlRowSet userRows = jdbcTemplate.queryForRowSet("select * from mpa where mpa_id = ?", id);
-
-        // обрабатываем результат выполнения запроса
-        if (userRows.next()) {
-            MPA mpa = new MPA(
-                    userRows.getLong("mpa_id"),
-                    userRows.getString("mpa_name"));
-
-            log.info("Найден рейтинг: {} {}", mpa.getId(), mpa.getName());
-            return Optional.of(mpa);
+        // рейтинги берутся из справочника в памяти, запроса к базе нет
+        Optional<MPA> mpa = referenceDataCache.findMPAById(id);
+        if (mpa.isPresent()) {
+            log.info("Найден рейтинг: {} {}", mpa.get().getId(), mpa.get().getName());
         } else {
             log.info("Рейтинг с идентификатором {} не найден.", id);
-            return Optional.empty();
         }
+        return mpa;
     }
 
     @Override
     public Collection<MPA> findAll() {
-        log.info("Запрос на вывод всех жанров");
-        String sqlQuery = "select * from mpa  " +
-                "ORDER BY mpa_ID ";
-        return jdbcTemplate.query(sqlQuery, this::mapRowToEmployee);
-    }
-
-    private MPA mapRowToEmployee(ResultSet rs, int rowNum) throws SQLException {
-        return MPA.builder()
-                .id(rs.getLong("mpa_id"))
-                .name(rs.getString("mpa_name"))
-                .build();
+        log.info("Запрос на вывод всех рейтингов");
+        return referenceDataCache.findAllMPA();
     }
 }
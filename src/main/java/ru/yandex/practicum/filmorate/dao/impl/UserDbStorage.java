@@ -1,35 +1,60 @@
 package ru.yandex.practicum.filmorate.dao.impl;
 
+import io.micrometer.core.annotation.Timed;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.jdbc.core.ConnectionCallback;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.support.GeneratedKeyHolder;
 import org.springframework.jdbc.support.KeyHolder;
 import org.springframework.jdbc.support.rowset.SqlRowSet;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
 import ru.yandex.practicum.filmorate.dao.UserStorage;
+import ru.yandex.practicum.filmorate.dao.index.FriendGraph;
+import ru.yandex.practicum.filmorate.dao.index.MutualFriendsCounter;
 import ru.yandex.practicum.filmorate.exception.UserNotFoundException;
 import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.utilites.Validation;
 
 import java.sql.Date;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.function.Consumer;
 
 import static ru.yandex.practicum.filmorate.utilites.Validation.*;
 
 @Component
+@Profile("!inmemory")
+@Timed(value = "filmorate.storage", description = "Время выполнения методов хранилищ")
 public class UserDbStorage implements UserStorage {
+    private static final int STREAM_FETCH_SIZE = 500;
+    private static final int ID_BATCH_SIZE = 1000;
+
     private final Logger log = LoggerFactory.getLogger(UserDbStorage.class);
 
     private final JdbcTemplate jdbcTemplate;
+    private final Optional<FriendGraph> friendGraph;
+    private final int maxFanOut;
 
     @Autowired
-    public UserDbStorage(JdbcTemplate jdbcTemplate) {
+    public UserDbStorage(JdbcTemplate jdbcTemplate,
+                         Optional<FriendGraph> friendGraph,
+                         @Value("${filmorate.recommendations.max-fan-out:1000}") int maxFanOut) {
         this.jdbcTemplate = jdbcTemplate;
+        this.friendGraph = friendGraph;
+        this.maxFanOut = maxFanOut;
     }
 
     @Override
@@ -54,6 +79,12 @@ public class UserDbStorage implements UserStorage {
         }
     }
 
+    @Override
+    public Optional<Long> findUserVersion(Long id) {
+        List<Long> versions = jdbcTemplate.queryForList("SELECT VERSION FROM USERS WHERE ID = ?", Long.class, id);
+        return versions.stream().findFirst();
+    }
+
     @Override
     public User create(User user) {
         log.info("Запрос на создания пользователя");
@@ -73,6 +104,41 @@ public class UserDbStorage implements UserStorage {
         return findUserById(keyHolder.getKey().longValue()).get();
     }
 
+    @Override
+    @Transactional
+    public List<User> createAll(List<User> users) {
+        log.info("Запрос на создание {} пользователей", users.size());
+        users.forEach(Validation::validationUser);
+        String sqlQuery = "insert into users(email, login, name, birthday) " +
+                "values (?, ?, ?, ?)";
+        List<Long> ids = jdbcTemplate.execute((ConnectionCallback<List<Long>>) connection -> {
+            try (PreparedStatement stmt = connection.prepareStatement(sqlQuery, new String[]{"id"})) {
+                for (User user : users) {
+                    stmt.setString(1, user.getEmail());
+                    stmt.setString(2, user.getLogin());
+                    stmt.setString(3, user.getName());
+                    stmt.setDate(4, Date.valueOf(user.getBirthday()));
+                    stmt.addBatch();
+                }
+                stmt.executeBatch();
+                List<Long> keys = new ArrayList<>(users.size());
+                try (ResultSet rs = stmt.getGeneratedKeys()) {
+                    while (rs.next()) {
+                        keys.add(rs.getLong(1));
+                    }
+                }
+                return keys;
+            }
+        });
+        List<User> created = new ArrayList<>(users.size());
+        for (int i = 0; i < users.size(); i++) {
+            User user = users.get(i);
+            created.add(new User(ids.get(i), user.getEmail(), user.getLogin(), user.getName(), user.getBirthday()));
+        }
+        log.info("Добавлено пользователей: {}", created.size());
+        return created;
+    }
+
     @Override
     public User update(User user) {
         log.info("Запрос на обновление пользователя");
@@ -82,7 +148,7 @@ public class UserDbStorage implements UserStorage {
         }
         validationUser(user);
         String sqlQuery = "update users set " +
-                "email = ?, login = ?, name = ?, birthday = ? " +
+                "email = ?, login = ?, name = ?, birthday = ?, version = version + 1 " +
                 "where id = ?";
         jdbcTemplate.update(sqlQuery,
                 user.getEmail(),
@@ -101,31 +167,54 @@ public class UserDbStorage implements UserStorage {
         return jdbcTemplate.query(sqlQuery, this::mapRowToEmployee);
     }
 
+    @Override
+    public Collection<User> findAll(long afterId, int limit) {
+        log.info("Запрос на вывод пользователей после ID {}, не больше {}", afterId, limit);
+        String sqlQuery = "select * from users " +
+                "where id > ? " +
+                "order by id " +
+                "limit ?";
+        return jdbcTemplate.query(sqlQuery, this::mapRowToEmployee, afterId, limit);
+    }
+
+    @Override
+    public void streamAll(Consumer<User> consumer) {
+        log.info("Запрос на потоковый вывод всех пользователей");
+        String sqlQuery = "select * from users order by id";
+        jdbcTemplate.query(connection -> {
+            PreparedStatement stmt = connection.prepareStatement(sqlQuery);
+            stmt.setFetchSize(STREAM_FETCH_SIZE);
+            return stmt;
+        }, rs -> {
+            consumer.accept(mapRowToEmployee(rs, 0));
+        });
+    }
+
     @Override
     public User requestToFriend(Long id, Long friendId) {
         log.info("Запрос на заявку в друзья");
-        checkUserExists(findUserById(friendId));
+        Optional<User> friend = findUserById(friendId);
+        checkUserExists(friend);
         String sqlQuery = "insert into friends(user_id, friend_id) " +
                 "values (?, ?)";
         jdbcTemplate.update(sqlQuery,
                 id,
                 friendId);
+        friendGraph.ifPresent(graph -> graph.add(id, friendId));
         log.info("Запрос в дурзья от пользователя с ID {} пользователю с ID {} отпарвлен", id, friendId);
-        return findUserById(friendId).get();
+        return friend.get();
     }
 
     @Override
     public User confirmFriend(Long confirmUserId, Long sendUserId) {
         log.info("Запрос на подтверждение дружбы");
-        String sqlQuery = String.format("SELECT EXISTS (SELECT * FROM FRIENDS " +
-                "WHERE USER_ID = %d AND FRIEND_ID = %d AND STATUS = FALSE);", sendUserId, confirmUserId);
-        checkFriendExists(jdbcTemplate.queryForObject(sqlQuery, Boolean.class));
-        sqlQuery = "update friends set " +
+        // неподтвержденная заявка проверяется условием самого update: 0 строк - заявки нет
+        String sqlQuery = "update friends set " +
                 "status = true " +
-                "where user_id = ? and friend_id = ?";
-        jdbcTemplate.update(sqlQuery,
+                "where user_id = ? and friend_id = ? and status = false";
+        checkFriendExists(jdbcTemplate.update(sqlQuery,
                 sendUserId,
-                confirmUserId);
+                confirmUserId) > 0);
         log.info("Пользователь с ID {} подтвердил заявку в друзья от пользователя с ID {}",
                 confirmUserId,
                 sendUserId);
@@ -135,11 +224,9 @@ public class UserDbStorage implements UserStorage {
     @Override
     public User deleteFriend(Long id, Long friendId) {
         log.info("Запрос на удаление из друзей");
-        String sqlQuery = String.format("SELECT EXISTS (SELECT * FROM FRIENDS " +
-                "WHERE USER_ID = %d AND FRIEND_ID = %d);", id, friendId);
-        checkFriendExists(jdbcTemplate.queryForObject(sqlQuery, Boolean.class));
-        sqlQuery = "delete from friends where user_id = ? and friend_id = ?";
-        jdbcTemplate.update(sqlQuery, id, friendId);
+        String sqlQuery = "delete from friends where user_id = ? and friend_id = ?";
+        checkFriendExists(jdbcTemplate.update(sqlQuery, id, friendId) > 0);
+        friendGraph.ifPresent(graph -> graph.remove(id, friendId));
         log.info("Пользователь с ID {} удален из друзей пользователя с ID {}", friendId, id);
         return findUserById(friendId).get();
     }
@@ -147,6 +234,9 @@ public class UserDbStorage implements UserStorage {
     @Override
     public Collection<User> getFriends(Long id) {
         log.info("Запрос на вывод друзей");
+        if (friendGraph.isPresent()) {
+            return findUsersByIds(friendGraph.get().friends(id));
+        }
         String sqlQuery = "SELECT * " +
                 "FROM USERS " +
                 "WHERE ID IN (" +
@@ -159,6 +249,9 @@ public class UserDbStorage implements UserStorage {
     @Override
     public Collection<User> commonFriends(Long id, Long friendId) {
         log.info("Запрос на вывод общих друзей");
+        if (friendGraph.isPresent()) {
+            return findUsersByIds(friendGraph.get().common(id, friendId));
+        }
         String sqlQuery = "SELECT * " +
                 "FROM USERS " +
                 "WHERE ID IN (" +
@@ -170,6 +263,89 @@ public class UserDbStorage implements UserStorage {
         return jdbcTemplate.query(sqlQuery, this::mapRowToEmployee, id, friendId);
     }
 
+    @Override
+    public Collection<User> recommendations(Long id, int limit) {
+        log.info("Запрос рекомендаций друзей для пользователя с ID {}", id);
+        long[] candidates = friendGraph.isPresent()
+                ? recommendFromGraph(friendGraph.get(), id, limit)
+                : recommendFromDb(id, limit);
+        return findUsersByIds(candidates);
+    }
+
+    /**
+     * Обход на два шага по графу в памяти. С каждого пользователя берется не больше
+     * maxFanOut друзей, чтобы пользователь с огромным числом друзей не замедлял запрос.
+     */
+    private long[] recommendFromGraph(FriendGraph graph, long id, int limit) {
+        long[] friends = graph.friends(id);
+        int hops = Math.min(friends.length, maxFanOut);
+        MutualFriendsCounter counter = new MutualFriendsCounter(id, friends, Math.min(hops * 16, 65_536));
+        for (int i = 0; i < hops; i++) {
+            long[] next = graph.friends(friends[i]);
+            int fanOut = Math.min(next.length, maxFanOut);
+            for (int j = 0; j < fanOut; j++) {
+                counter.add(next[j]);
+            }
+        }
+        return counter.top(limit);
+    }
+
+    /**
+     * Тот же обход по таблице FRIENDS: друзья друзей читаются порциями по ID_BATCH_SIZE
+     * и считаются прямо при чтении строк, не больше maxFanOut строк на пользователя.
+     */
+    private long[] recommendFromDb(long id, int limit) {
+        long[] friends = jdbcTemplate.queryForList("select friend_id from friends where user_id = ? order by friend_id",
+                Long.class, id).stream().mapToLong(Long::longValue).toArray();
+        int hops = Math.min(friends.length, maxFanOut);
+        MutualFriendsCounter counter = new MutualFriendsCounter(id, friends, Math.min(hops * 16, 65_536));
+        for (int from = 0; from < hops; from += ID_BATCH_SIZE) {
+            int to = Math.min(from + ID_BATCH_SIZE, hops);
+            String sqlQuery = "select user_id, friend_id from friends " +
+                    "where user_id = any(?) " +
+                    "order by user_id, friend_id";
+            long[] current = {-1, 0};
+            jdbcTemplate.query(sqlQuery, rs -> {
+                long userId = rs.getLong(1);
+                if (userId != current[0]) {
+                    current[0] = userId;
+                    current[1] = 0;
+                }
+                if (current[1]++ < maxFanOut) {
+                    counter.add(rs.getLong(2));
+                }
+            }, (Object) Arrays.stream(friends, from, to).boxed().toArray(Long[]::new));
+        }
+        return counter.top(limit);
+    }
+
+    /**
+     * Загружает пользователей по списку id порциями по ID_BATCH_SIZE
+     *
+     * @param ids id пользователей
+     * @return найденные пользователи в порядке переданных id
+     */
+    private List<User> findUsersByIds(long[] ids) {
+        Map<Long, User> usersById = new HashMap<>();
+        for (int from = 0; from < ids.length; from += ID_BATCH_SIZE) {
+            int to = Math.min(from + ID_BATCH_SIZE, ids.length);
+            // массив одним параметром: текст запроса не зависит от числа id и берется из кеша H2
+            String sqlQuery = "select * from users where id = any(?)";
+            jdbcTemplate.query(sqlQuery, rs -> {
+                User user = mapRowToEmployee(rs, 0);
+                usersById.put(user.getId(), user);
+            }, (Object) Arrays.stream(ids, from, to).boxed().toArray(Long[]::new));
+        }
+        List<User> users = new ArrayList<>(ids.length);
+        for (long id : ids) {
+            User user = usersById.get(id);
+            if (user != null) {
+                users.add(user);
+            }
+        }
+        return users;
+    }
+
     private User mapRowToEmployee(ResultSet rs, int rowNum) throws SQLException {
         return User.builder()
                 .id(rs.getLong("id"))
@@ -0,0 +1,104 @@
+package ru.yandex.practicum.filmorate.dao.index;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Таблица FRIENDS в памяти: для каждого пользователя отсортированный массив id тех,
+ * кому он отправил заявку или с кем дружит. Массивы не меняются, при изменении
+ * заменяются новой копией, поэтому чтение идет без блокировок.
+ * Включается свойством filmorate.friend-graph.enabled=true.
+ */
+@Component
+@ConditionalOnProperty(name = "filmorate.friend-graph.enabled", havingValue = "true")
+public class FriendGraph {
+    private static final long[] EMPTY = SortedLongArrays.EMPTY;
+
+    private final Logger log = LoggerFactory.getLogger(FriendGraph.class);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final Map<Long, long[]> friends = new ConcurrentHashMap<>();
+
+    @Autowired
+    public FriendGraph(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @PostConstruct
+    public void load() {
+        Map<Long, long[]> loaded = new HashMap<>();
+        Map<Long, Integer> sizes = new HashMap<>();
+        jdbcTemplate.query("SELECT USER_ID, FRIEND_ID FROM FRIENDS ORDER BY USER_ID, FRIEND_ID", rs -> {
+            long userId = rs.getLong("USER_ID");
+            long[] ids = loaded.getOrDefault(userId, EMPTY);
+            int size = sizes.getOrDefault(userId, 0);
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, Math.max(4, size * 2));
+                loaded.put(userId, ids);
+            }
+            ids[size] = rs.getLong("FRIEND_ID");
+            sizes.put(userId, size + 1);
+        });
+        friends.clear();
+        loaded.forEach((userId, ids) -> friends.put(userId, Arrays.copyOf(ids, sizes.get(userId))));
+        log.info("Граф друзей загружен, пользователей с друзьями: {}", friends.size());
+    }
+
+    /**
+     * Добавляет связь пользователь - друг
+     *
+     * @param userId   id пользователя
+     * @param friendId id друга
+     */
+    public void add(long userId, long friendId) {
+        friends.compute(userId, (key, ids) -> SortedLongArrays.insert(ids == null ? EMPTY : ids, friendId));
+    }
+
+    /**
+     * Удаляет связь пользователь - друг
+     *
+     * @param userId   id пользователя
+     * @param friendId id друга
+     */
+    public void remove(long userId, long friendId) {
+        friends.computeIfPresent(userId, (key, ids) -> {
+            long[] updated = SortedLongArrays.remove(ids, friendId);
+            return updated.length == 0 ? null : updated;
+        });
+    }
+
+    /**
+     * Друзья пользователя
+     *
+     * @param userId id пользователя
+     * @return id друзей по возрастанию, массив нельзя изменять
+     */
+    public long[] friends(long userId) {
+        return friends.getOrDefault(userId, EMPTY);
+    }
+
+    /**
+     * Общие друзья двух пользователей: пересечение отсортированных массивов за один проход
+     *
+     * @param userId  id первого пользователя
+     * @param otherId id второго пользователя
+     * @return id общих друзей по возрастанию
+     */
+    public long[] common(long userId, long otherId) {
+        if (userId == otherId) {
+            // как и в запросе с HAVING COUNT > 1, сам с собой общих друзей нет
+            return EMPTY;
+        }
+        return SortedLongArrays.intersect(friends(userId), friends(otherId));
+    }
+}
@@ -0,0 +1,302 @@
+package ru.yandex.practicum.filmorate.dao.index;
+
+import org.roaringbitmap.RoaringBitmap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.exception.ValidationException;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Function;
+
+/**
+ * Матрица пользователь x фильм из FILM_LIKES: для каждого пользователя сжатый битовый набор
+ * id понравившихся фильмов и, в обратную сторону, для каждого фильма набор лайкнувших его.
+ * Строится при старте и обновляется при каждом лайке. Наборы меняются на месте под
+ * блокировкой записи одной из {@value #STRIPES} полос, выбранной по ключу набора, а каждое
+ * чтение набора идет под блокировкой чтения той же полосы, так что лайк стоит O(1),
+ * а не копию всего набора.
+ * Наборы 32-битные: id больше {@link #MAX_ID} в матрицу не помещаются и отклоняются,
+ * а не обрезаются до чужого id.
+ */
+@Component
+public class LikeMatrix {
+    // сколько пользователей сравнивается в одной задаче fork-join без дальнейшего деления
+    private static final int SPLIT_THRESHOLD = 2048;
+    private static final int STRIPES = 64;
+
+    /**
+     * Наибольший id пользователя или фильма, который можно хранить в матрице
+     */
+    public static final long MAX_ID = Integer.MAX_VALUE;
+
+    private static final RoaringBitmap EMPTY = new RoaringBitmap();
+
+    private final Logger log = LoggerFactory.getLogger(LikeMatrix.class);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final Map<Integer, RoaringBitmap> likes = new ConcurrentHashMap<>();
+    private final Map<Integer, RoaringBitmap> likers = new ConcurrentHashMap<>();
+    private final StampedLock[] userLocks = new StampedLock[STRIPES];
+    private final StampedLock[] filmLocks = new StampedLock[STRIPES];
+    private final ForkJoinPool pool;
+    private final int neighbours;
+
+    @Autowired
+    public LikeMatrix(JdbcTemplate jdbcTemplate,
+                      @Value("${filmorate.film-recommendations.neighbours:20}") int neighbours,
+                      @Value("${filmorate.film-recommendations.parallelism:0}") int parallelism) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.neighbours = neighbours;
+        this.pool = new ForkJoinPool(parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors());
+        for (int i = 0; i < STRIPES; i++) {
+            userLocks[i] = new StampedLock();
+            filmLocks[i] = new StampedLock();
+        }
+    }
+
+    @PostConstruct
+    public void load() {
+        load(consumer -> jdbcTemplate.query("SELECT USER_ID, FILM_ID FROM FILM_LIKES", rs -> {
+            consumer.accept(rs.getLong("FILM_ID"), rs.getLong("USER_ID"), 0);
+        }));
+    }
+
+    /**
+     * Строит матрицу заново по всем лайкам источника
+     *
+     * @param source все лайки
+     */
+    public void load(LikeSource source) {
+        Map<Integer, RoaringBitmap> byUser = new HashMap<>();
+        Map<Integer, RoaringBitmap> byFilm = new HashMap<>();
+        source.forEachLike((filmId, userId, time) -> {
+            byUser.computeIfAbsent(index(userId), key -> new RoaringBitmap()).add(index(filmId));
+            byFilm.computeIfAbsent(index(filmId), key -> new RoaringBitmap()).add(index(userId));
+        });
+        byUser.values().forEach(RoaringBitmap::runOptimize);
+        byFilm.values().forEach(RoaringBitmap::runOptimize);
+        likes.clear();
+        likes.putAll(byUser);
+        likers.clear();
+        likers.putAll(byFilm);
+        log.info("Матрица лайков загружена, пользователей с лайками: {}", likes.size());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    /**
+     * Отмечает лайк пользователя фильму
+     *
+     * @param userId id пользователя
+     * @param filmId id фильма
+     * @throws ValidationException если id не помещается в матрицу
+     */
+    public void add(long userId, long filmId) {
+        checkIds(userId, filmId);
+        int user = (int) userId;
+        int film = (int) filmId;
+        set(likes, userLocks, user, film, true);
+        set(likers, filmLocks, film, user, true);
+    }
+
+    /**
+     * Снимает лайк пользователя фильму; лайка с id вне матрицы в ней нет, снимать нечего
+     *
+     * @param userId id пользователя
+     * @param filmId id фильма
+     */
+    public void remove(long userId, long filmId) {
+        if (userId < 0 || userId > MAX_ID || filmId < 0 || filmId > MAX_ID) {
+            return;
+        }
+        int user = (int) userId;
+        int film = (int) filmId;
+        set(likes, userLocks, user, film, false);
+        set(likers, filmLocks, film, user, false);
+    }
+
+    private static void set(Map<Integer, RoaringBitmap> bitmaps, StampedLock[] locks,
+                            int key, int value, boolean present) {
+        StampedLock lock = lock(locks, key);
+        long stamp = lock.writeLock();
+        try {
+            if (present) {
+                bitmaps.computeIfAbsent(key, k -> new RoaringBitmap()).add(value);
+                return;
+            }
+            RoaringBitmap bitmap = bitmaps.get(key);
+            if (bitmap != null && bitmap.checkedRemove(value) && bitmap.isEmpty()) {
+                bitmaps.remove(key);
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    private static StampedLock lock(StampedLock[] locks, int key) {
+        return locks[key & (STRIPES - 1)];
+    }
+
+    // выполняет чтение набора под блокировкой его полосы; нет набора - пустой
+    private static <T> T read(Map<Integer, RoaringBitmap> bitmaps, StampedLock[] locks, int key,
+                              Function<RoaringBitmap, T> reader) {
+        StampedLock lock = lock(locks, key);
+        long stamp = lock.readLock();
+        try {
+            RoaringBitmap bitmap = bitmaps.get(key);
+            return reader.apply(bitmap == null ? EMPTY : bitmap);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Проверяет, что лайк поместится в матрицу; хранилища вызывают ее до записи лайка,
+     * чтобы не сохранить лайк, который потом нельзя будет учесть в рекомендациях
+     *
+     * @param userId id пользователя
+     * @param filmId id фильма
+     * @throws ValidationException если id отрицательный или больше {@link #MAX_ID}
+     */
+    public void checkIds(long userId, long filmId) {
+        if (userId < 0 || userId > MAX_ID || filmId < 0 || filmId > MAX_ID) {
+            log.warn("id фильма {} или пользователя {} не помещается в матрицу лайков", filmId, userId);
+            throw new ValidationException("id фильма и пользователя не могут быть больше " + MAX_ID);
+        }
+    }
+
+    private static int index(long id) {
+        if (id < 0 || id > MAX_ID) {
+            throw new IllegalArgumentException("id " + id + " не помещается в матрицу лайков");
+        }
+        return (int) id;
+    }
+
+    /**
+     * Рекомендации фильмов: находятся пользователи с наибольшим числом общих лайков,
+     * их фильмы, которые пользователь еще не лайкал, ранжируются по сумме общих лайков
+     * с лайкнувшими их соседями. Сравниваются только пользователи, лайкнувшие хотя бы один
+     * фильм из лайков пользователя, сравнение идет параллельно.
+     *
+     * @param userId id пользователя
+     * @param limit  сколько фильмов вернуть
+     * @return id фильмов от наиболее подходящего
+     */
+    public List<Long> recommend(long userId, int limit) {
+        if (userId < 0 || userId > MAX_ID || limit <= 0) {
+            return List.of();
+        }
+        // свои лайки копируются один раз: с ними сравниваются все кандидаты
+        RoaringBitmap mine = read(likes, userLocks, (int) userId, RoaringBitmap::clone);
+        if (mine.isEmpty()) {
+            return List.of();
+        }
+        RoaringBitmap candidates = new RoaringBitmap();
+        mine.forEach((int filmId) -> read(likers, filmLocks, filmId, users -> {
+            candidates.or(users);
+            return null;
+        }));
+        candidates.remove((int) userId);
+        int[] userIds = candidates.toArray();
+        long[] top = pool.invoke(new NeighboursTask(this, mine, userIds, 0, userIds.length, neighbours));
+
+        Map<Integer, Long> scores = new HashMap<>();
+        for (long packed : top) {
+            int overlap = (int) (packed >>> 32);
+            if (overlap == 0) {
+                continue;
+            }
+            int neighbour = ~(int) packed;
+            read(likes, userLocks, neighbour, films -> RoaringBitmap.andNot(films, mine))
+                    .forEach((int filmId) -> scores.merge(filmId, (long) overlap, Long::sum));
+        }
+        List<Map.Entry<Integer, Long>> ranked = new ArrayList<>(scores.entrySet());
+        ranked.sort(Map.Entry.<Integer, Long>comparingByValue().reversed()
+                .thenComparing(Map.Entry.comparingByKey()));
+        List<Long> result = new ArrayList<>(Math.min(limit, ranked.size()));
+        for (int i = 0; i < ranked.size() && result.size() < limit; i++) {
+            result.add((long) ranked.get(i).getKey());
+        }
+        return result;
+    }
+
+    /**
+     * Лучшие соседи на отрезке пользователей. Сосед упакован в long: старшие 32 бита -
+     * число общих лайков, младшие - инвертированный id, так что больше значит лучше,
+     * а при равенстве выше меньший id. Результат отсортирован по убыванию.
+     */
+    private static final class NeighboursTask extends RecursiveTask<long[]> {
+        private final LikeMatrix matrix;
+        private final RoaringBitmap mine;
+        private final int[] userIds;
+        private final int from;
+        private final int to;
+        private final int k;
+
+        private NeighboursTask(LikeMatrix matrix, RoaringBitmap mine, int[] userIds, int from, int to, int k) {
+            this.matrix = matrix;
+            this.mine = mine;
+            this.userIds = userIds;
+            this.from = from;
+            this.to = to;
+            this.k = k;
+        }
+
+        @Override
+        protected long[] compute() {
+            if (to - from <= SPLIT_THRESHOLD) {
+                long[] top = new long[k];
+                int size = 0;
+                for (int i = from; i < to; i++) {
+                    int overlap = read(matrix.likes, matrix.userLocks, userIds[i],
+                            films -> RoaringBitmap.andCardinality(mine, films));
+                    if (overlap > 0) {
+                        size = insert(top, size, ((long) overlap << 32) | (~userIds[i] & 0xFFFFFFFFL));
+                    }
+                }
+                return Arrays.copyOf(top, size);
+            }
+            int middle = (from + to) >>> 1;
+            NeighboursTask left = new NeighboursTask(matrix, mine, userIds, from, middle, k);
+            left.fork();
+            long[] right = new NeighboursTask(matrix, mine, userIds, middle, to, k).compute();
+            long[] merged = Arrays.copyOf(left.join(), k);
+            int size = Math.min(left.join().length, k);
+            for (long value : right) {
+                size = insert(merged, size, value);
+            }
+            return Arrays.copyOf(merged, size);
+        }
+
+        // вставка в массив, отсортированный по убыванию; худший элемент вытесняется
+        private static int insert(long[] top, int size, long value) {
+            if (size == top.length && (size == 0 || value <= top[size - 1])) {
+                return size;
+            }
+            int i = size == top.length ? size - 1 : size++;
+            while (i > 0 && top[i - 1] < value) {
+                top[i] = top[i - 1];
+                i--;
+            }
+            top[i] = value;
+            return size;
+        }
+    }
+}
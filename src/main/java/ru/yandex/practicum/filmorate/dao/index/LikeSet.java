@@ -0,0 +1,117 @@
+package ru.yandex.practicum.filmorate.dao.index;
+
+/**
+ * Лайки одного фильма: id пользователя -> время лайка, открытая адресация на массивах long
+ * без объектов на каждый лайк. Не потокобезопасен, изменяется под блокировкой фильма.
+ */
+public final class LikeSet {
+    private static final long FREE = 0;
+
+    private long[] users = new long[4];
+    private long[] times = new long[4];
+    private int size;
+
+    public int size() {
+        return size;
+    }
+
+    public boolean contains(long userId) {
+        return users[slot(userId)] == userId;
+    }
+
+    /**
+     * @return время лайка пользователя или -1, если лайка нет
+     */
+    public long likedAt(long userId) {
+        int slot = slot(userId);
+        return users[slot] == userId ? times[slot] : -1;
+    }
+
+    /**
+     * @return false, если пользователь уже лайкнул фильм
+     */
+    public boolean add(long userId, long time) {
+        if ((size + 1) * 2 > users.length) {
+            grow();
+        }
+        int slot = slot(userId);
+        if (users[slot] == userId) {
+            return false;
+        }
+        users[slot] = userId;
+        times[slot] = time;
+        size++;
+        return true;
+    }
+
+    /**
+     * @return время удаленного лайка или -1, если лайка не было
+     */
+    public long remove(long userId) {
+        int slot = slot(userId);
+        if (users[slot] != userId) {
+            return -1;
+        }
+        long time = times[slot];
+        users[slot] = FREE;
+        size--;
+        // сдвигаем следующие записи цепочки, чтобы поиск не обрывался на освободившейся ячейке
+        int mask = users.length - 1;
+        int free = slot;
+        for (int next = (slot + 1) & mask; users[next] != FREE; next = (next + 1) & mask) {
+            int home = hash(users[next]) & mask;
+            if (((next - home) & mask) >= ((next - free) & mask)) {
+                users[free] = users[next];
+                times[free] = times[next];
+                users[next] = FREE;
+                free = next;
+            }
+        }
+        return time;
+    }
+
+    /**
+     * Обходит лайки в порядке ячеек таблицы
+     */
+    public void forEach(Visitor visitor) {
+        for (int i = 0; i < users.length; i++) {
+            if (users[i] != FREE) {
+                visitor.visit(users[i], times[i]);
+            }
+        }
+    }
+
+    // ячейка с userId или первая свободная ячейка его цепочки; id пользователей всегда больше 0
+    private int slot(long userId) {
+        int mask = users.length - 1;
+        int slot = hash(userId) & mask;
+        while (users[slot] != FREE && users[slot] != userId) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void grow() {
+        long[] oldUsers = users;
+        long[] oldTimes = times;
+        users = new long[oldUsers.length * 2];
+        times = new long[oldUsers.length * 2];
+        for (int i = 0; i < oldUsers.length; i++) {
+            if (oldUsers[i] != FREE) {
+                int slot = slot(oldUsers[i]);
+                users[slot] = oldUsers[i];
+                times[slot] = oldTimes[i];
+            }
+        }
+    }
+
+    private static int hash(long userId) {
+        long h = userId * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    @FunctionalInterface
+    public interface Visitor {
+        void visit(long userId, long time);
+    }
+}
@@ -0,0 +1,20 @@
+package ru.yandex.practicum.filmorate.dao.index;
+
+/**
+ * Источник лайков для построения индексов при старте: таблица FILM_LIKES или хранилище в памяти
+ */
+@FunctionalInterface
+public interface LikeSource {
+
+    void forEachLike(LikeConsumer consumer);
+
+    @FunctionalInterface
+    interface LikeConsumer {
+        /**
+         * @param filmId id фильма
+         * @param userId id пользователя
+         * @param time   время лайка в миллисекундах
+         */
+        void accept(long filmId, long userId, long time);
+    }
+}
@@ -0,0 +1,94 @@
+package ru.yandex.practicum.filmorate.dao.index;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Predicate;
+
+/**
+ * Таблица id -> запись для плотных последовательных id, которые выдает сама таблица.
+ * Записи лежат в страницах по {@value #PAGE_SIZE} ячеек, ячейка находится по id без хеширования
+ * и упаковки в Long. Чтение без блокировок, новые страницы добавляются под блокировкой.
+ */
+public final class LongTable<T> {
+    private static final int PAGE_BITS = 12;
+    private static final int PAGE_SIZE = 1 << PAGE_BITS;
+
+    private final AtomicLong lastId = new AtomicLong();
+    private final AtomicInteger size = new AtomicInteger();
+    private volatile AtomicReferenceArray<AtomicReferenceArray<T>> pages = new AtomicReferenceArray<>(16);
+
+    /**
+     * @return новый id, больший всех выданных и загруженных
+     */
+    public long nextId() {
+        return lastId.incrementAndGet();
+    }
+
+    public T get(long id) {
+        if (id <= 0 || id > lastId.get()) {
+            return null;
+        }
+        AtomicReferenceArray<AtomicReferenceArray<T>> current = pages;
+        int page = (int) (id >>> PAGE_BITS);
+        if (page >= current.length()) {
+            return null;
+        }
+        AtomicReferenceArray<T> cells = current.get(page);
+        return cells == null ? null : cells.get((int) (id & (PAGE_SIZE - 1)));
+    }
+
+    /**
+     * Записывает запись по id; id больше выданных сдвигает счетчик, как при загрузке из базы
+     */
+    public void put(long id, T value) {
+        if (id <= 0 || (id >>> PAGE_BITS) >= Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Недопустимый id " + id);
+        }
+        AtomicReferenceArray<T> cells = page((int) (id >>> PAGE_BITS));
+        if (cells.getAndSet((int) (id & (PAGE_SIZE - 1)), value) == null) {
+            size.incrementAndGet();
+        }
+        lastId.accumulateAndGet(id, Math::max);
+    }
+
+    public int size() {
+        return size.get();
+    }
+
+    /**
+     * Обходит записи по возрастанию id, начиная после afterId, пока visitor возвращает true
+     */
+    public void forEachAfter(long afterId, Predicate<T> visitor) {
+        long last = lastId.get();
+        for (long id = Math.max(afterId + 1, 1); id <= last; id++) {
+            T value = get(id);
+            if (value != null && !visitor.test(value)) {
+                return;
+            }
+        }
+    }
+
+    private AtomicReferenceArray<T> page(int page) {
+        AtomicReferenceArray<AtomicReferenceArray<T>> current = pages;
+        if (page < current.length() && current.get(page) != null) {
+            return current.get(page);
+        }
+        synchronized (this) {
+            current = pages;
+            if (page >= current.length()) {
+                AtomicReferenceArray<AtomicReferenceArray<T>> grown =
+                        new AtomicReferenceArray<>(Math.max(current.length() * 2, page + 1));
+                for (int i = 0; i < current.length(); i++) {
+                    grown.set(i, current.get(i));
+                }
+                pages = grown;
+                current = grown;
+            }
+            if (current.get(page) == null) {
+                current.set(page, new AtomicReferenceArray<>(PAGE_SIZE));
+            }
+            return current.get(page);
+        }
+    }
+}
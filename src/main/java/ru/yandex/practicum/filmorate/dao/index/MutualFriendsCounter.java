@@ -0,0 +1,152 @@
+package ru.yandex.practicum.filmorate.dao.index;
+
+import java.util.Arrays;
+
+/**
+ * Подсчет общих друзей для рекомендаций: кандидат - друг друга, счетчик - сколько друзей
+ * пользователя с ним дружат. Хранит счетчики в открытой адресации на примитивных массивах,
+ * первые limit кандидатов выбираются кучей без сортировки всех кандидатов.
+ */
+public final class MutualFriendsCounter {
+    private static final long FREE = Long.MIN_VALUE;
+
+    private final long userId;
+    private final long[] friends;
+    private long[] keys;
+    private int[] counts;
+    private int size;
+
+    /**
+     * @param userId   id пользователя, для которого строятся рекомендации
+     * @param friends  его друзья по возрастанию id, они в рекомендации не попадают
+     * @param expected ожидаемое количество кандидатов
+     */
+    public MutualFriendsCounter(long userId, long[] friends, int expected) {
+        this.userId = userId;
+        this.friends = friends;
+        int capacity = Integer.highestOneBit(Math.max(16, expected * 2 - 1)) << 1;
+        this.keys = new long[capacity];
+        this.counts = new int[capacity];
+        Arrays.fill(keys, FREE);
+    }
+
+    /**
+     * Учитывает еще одного общего друга с кандидатом
+     *
+     * @param candidateId id друга одного из друзей пользователя
+     */
+    public void add(long candidateId) {
+        if (candidateId == userId || Arrays.binarySearch(friends, candidateId) >= 0) {
+            return;
+        }
+        int slot = slot(keys, candidateId);
+        if (keys[slot] == FREE) {
+            keys[slot] = candidateId;
+            if (++size * 2 > keys.length) {
+                grow();
+                slot = slot(keys, candidateId);
+            }
+        }
+        counts[slot]++;
+    }
+
+    /**
+     * Кандидаты с наибольшим числом общих друзей
+     *
+     * @param limit сколько кандидатов вернуть
+     * @return id кандидатов: больше общих друзей выше, при равенстве меньший id выше
+     */
+    public long[] top(int limit) {
+        int k = Math.min(limit, size);
+        if (k <= 0) {
+            return new long[0];
+        }
+        // куча из k слотов, в корне худший из отобранных кандидатов
+        int[] heap = new int[k];
+        int heapSize = 0;
+        for (int slot = 0; slot < keys.length; slot++) {
+            if (keys[slot] == FREE) {
+                continue;
+            }
+            if (heapSize < k) {
+                heap[heapSize] = slot;
+                siftUp(heap, heapSize++);
+            } else if (better(slot, heap[0])) {
+                heap[0] = slot;
+                siftDown(heap, heapSize);
+            }
+        }
+        long[] result = new long[k];
+        for (int i = k - 1; i >= 0; i--) {
+            result[i] = keys[heap[0]];
+            heap[0] = heap[--heapSize];
+            siftDown(heap, heapSize);
+        }
+        return result;
+    }
+
+    private boolean better(int first, int second) {
+        return counts[first] != counts[second] ? counts[first] > counts[second] : keys[first] < keys[second];
+    }
+
+    private void siftUp(int[] heap, int index) {
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (!better(heap[parent], heap[index])) {
+                return;
+            }
+            swap(heap, parent, index);
+            index = parent;
+        }
+    }
+
+    private void siftDown(int[] heap, int heapSize) {
+        int index = 0;
+        while (true) {
+            int worst = index;
+            int left = 2 * index + 1;
+            int right = left + 1;
+            if (left < heapSize && better(heap[worst], heap[left])) {
+                worst = left;
+            }
+            if (right < heapSize && better(heap[worst], heap[right])) {
+                worst = right;
+            }
+            if (worst == index) {
+                return;
+            }
+            swap(heap, index, worst);
+            index = worst;
+        }
+    }
+
+    private static void swap(int[] heap, int i, int j) {
+        int tmp = heap[i];
+        heap[i] = heap[j];
+        heap[j] = tmp;
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        int[] oldCounts = counts;
+        keys = new long[oldKeys.length * 2];
+        counts = new int[oldCounts.length * 2];
+        Arrays.fill(keys, FREE);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != FREE) {
+                int slot = slot(keys, oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                counts[slot] = oldCounts[i];
+            }
+        }
+    }
+
+    private static int slot(long[] keys, long key) {
+        int mask = keys.length - 1;
+        int slot = (int) (key * 0x9E3779B97F4A7C15L >>> 32) & mask;
+        while (keys[slot] != FREE && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+}
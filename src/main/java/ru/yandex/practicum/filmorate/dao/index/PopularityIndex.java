@@ -0,0 +1,258 @@
+package ru.yandex.practicum.filmorate.dao.index;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.sql.Date;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Objects;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Рейтинг фильмов по количеству лайков, который хранится в памяти и обновляется
+ * при каждом лайке, чтобы популярные фильмы не считались через GROUP BY по FILM_LIKES.
+ * Кроме общего рейтинга ведутся рейтинги по каждому жанру и году выхода,
+ * поэтому выборка с фильтром стоит столько же, сколько без него.
+ * Порядок: больше лайков выше, при равенстве меньший id выше.
+ */
+@Component
+public class PopularityIndex {
+    private static final long[] NO_GENRES = new long[0];
+    private static final Comparator<Entry> BY_LIKES_DESC = Comparator
+            .comparingLong((Entry e) -> e.likes).reversed()
+            .thenComparingLong(e -> e.filmId);
+
+    private final Logger log = LoggerFactory.getLogger(PopularityIndex.class);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final Map<Long, Entry> entries = new HashMap<>();
+    private final NavigableSet<Entry> ranking = new TreeSet<>(BY_LIKES_DESC);
+    private final Map<Long, NavigableSet<Entry>> byGenre = new HashMap<>();
+    private final Map<Integer, NavigableSet<Entry>> byYear = new HashMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    @Autowired
+    public PopularityIndex(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @PostConstruct
+    public void load() {
+        lock.writeLock().lock();
+        try {
+            clear();
+            Map<Long, List<Long>> genres = new HashMap<>();
+            jdbcTemplate.query("SELECT FILM_ID, GENRE_ID FROM FILM_GENRE", rs -> {
+                genres.computeIfAbsent(rs.getLong("FILM_ID"), key -> new ArrayList<>()).add(rs.getLong("GENRE_ID"));
+            });
+            jdbcTemplate.query("SELECT ID, LIKES_COUNT, RELEASE_DATE FROM FILMS", rs -> {
+                long filmId = rs.getLong("ID");
+                Date releaseDate = rs.getDate("RELEASE_DATE");
+                put(filmId, rs.getLong("LIKES_COUNT"),
+                        releaseDate == null ? null : releaseDate.toLocalDate().getYear(),
+                        genres.getOrDefault(filmId, List.of()).stream().mapToLong(Long::longValue).toArray());
+            });
+            log.info("Рейтинг популярности загружен, фильмов: {}, жанров: {}, лет: {}",
+                    entries.size(), byGenre.size(), byYear.size());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Убирает из рейтинга все фильмы, чтобы заполнить его заново через put
+     */
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            entries.clear();
+            ranking.clear();
+            byGenre.clear();
+            byYear.clear();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Добавляет фильм в рейтинг или заменяет его количество лайков, год и жанры
+     *
+     * @param filmId   id фильма
+     * @param likes    количество лайков
+     * @param year     год выхода, null если неизвестен
+     * @param genreIds id жанров фильма
+     */
+    public void put(long filmId, long likes, Integer year, long[] genreIds) {
+        long[] sorted = genreIds.clone();
+        Arrays.sort(sorted);
+        lock.writeLock().lock();
+        try {
+            Entry old = entries.remove(filmId);
+            if (old != null) {
+                unindex(old);
+            }
+            Entry entry = new Entry(filmId, likes, year, sorted);
+            entries.put(filmId, entry);
+            index(entry);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Меняет год и жанры фильма, количество лайков сохраняется
+     *
+     * @param filmId   id фильма
+     * @param year     год выхода, null если неизвестен
+     * @param genreIds id жанров фильма
+     */
+    public void updateAttributes(long filmId, Integer year, long[] genreIds) {
+        lock.writeLock().lock();
+        try {
+            Entry old = entries.get(filmId);
+            put(filmId, old == null ? 0 : old.likes, year, genreIds);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Меняет количество лайков фильма на delta
+     *
+     * @param filmId id фильма
+     * @param delta  на сколько изменилось количество лайков
+     */
+    public void changeLikes(long filmId, long delta) {
+        if (delta == 0) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            Entry old = entries.get(filmId);
+            if (old == null) {
+                put(filmId, delta, null, NO_GENRES);
+            } else {
+                put(filmId, old.likes + delta, old.year, old.genreIds);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Количество лайков фильма
+     *
+     * @param filmId id фильма
+     * @return количество лайков, 0 если фильма нет в рейтинге
+     */
+    public long likes(long filmId) {
+        lock.readLock().lock();
+        try {
+            Entry entry = entries.get(filmId);
+            return entry == null ? 0 : entry.likes;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Первые count фильмов рейтинга
+     *
+     * @param count сколько фильмов вернуть
+     * @return id фильмов от самого популярного
+     */
+    public List<Long> top(int count) {
+        return top(count, null, null);
+    }
+
+    /**
+     * Первые count фильмов рейтинга жанра и/или года. Если заданы оба фильтра,
+     * обходится меньший из двух рейтингов, второй фильтр проверяется по записи.
+     *
+     * @param count   сколько фильмов вернуть
+     * @param genreId id жанра, null - любой
+     * @param year    год выхода, null - любой
+     * @return id фильмов от самого популярного
+     */
+    public List<Long> top(int count, Long genreId, Integer year) {
+        lock.readLock().lock();
+        try {
+            NavigableSet<Entry> source = ranking;
+            if (genreId != null) {
+                source = byGenre.getOrDefault(genreId, new TreeSet<>());
+            }
+            if (year != null) {
+                NavigableSet<Entry> yearRanking = byYear.getOrDefault(year, new TreeSet<>());
+                if (genreId == null || yearRanking.size() < source.size()) {
+                    source = yearRanking;
+                }
+            }
+            List<Long> ids = new ArrayList<>(Math.max(0, Math.min(count, source.size())));
+            Iterator<Entry> iterator = source.iterator();
+            while (ids.size() < count && iterator.hasNext()) {
+                Entry entry = iterator.next();
+                if ((genreId == null || Arrays.binarySearch(entry.genreIds, genreId) >= 0)
+                        && (year == null || year.equals(entry.year))) {
+                    ids.add(entry.filmId);
+                }
+            }
+            return ids;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void index(Entry entry) {
+        ranking.add(entry);
+        for (long genreId : entry.genreIds) {
+            byGenre.computeIfAbsent(genreId, key -> new TreeSet<>(BY_LIKES_DESC)).add(entry);
+        }
+        if (entry.year != null) {
+            byYear.computeIfAbsent(entry.year, key -> new TreeSet<>(BY_LIKES_DESC)).add(entry);
+        }
+    }
+
+    private void unindex(Entry entry) {
+        ranking.remove(entry);
+        for (long genreId : entry.genreIds) {
+            removeFrom(byGenre, genreId, entry);
+        }
+        if (entry.year != null) {
+            removeFrom(byYear, entry.year, entry);
+        }
+    }
+
+    private static <K> void removeFrom(Map<K, NavigableSet<Entry>> rankings, K key, Entry entry) {
+        NavigableSet<Entry> set = rankings.get(key);
+        if (set != null && set.remove(entry) && set.isEmpty()) {
+            rankings.remove(key);
+        }
+    }
+
+    private static final class Entry {
+        private final long filmId;
+        private final long likes;
+        private final Integer year;
+        private final long[] genreIds;
+
+        private Entry(long filmId, long likes, Integer year, long[] genreIds) {
+            this.filmId = filmId;
+            this.likes = likes;
+            this.year = year;
+            this.genreIds = Objects.requireNonNull(genreIds);
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package ru.yandex.practicum.filmorate.dao.index;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.MPA;
+
+import javax.annotation.PostConstruct;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Жанры и рейтинги MPA в памяти. Справочники почти не меняются, поэтому читаются из базы
+ * при старте и перечитываются раз в filmorate.reference-cache.refresh-interval-ms.
+ * Снимок неизменяемый и заменяется целиком, поиск по id - обращение к массиву.
+ */
+@Component
+public class ReferenceDataCache {
+    private final Logger log = LoggerFactory.getLogger(ReferenceDataCache.class);
+
+    private final JdbcTemplate jdbcTemplate;
+    private volatile Snapshot snapshot = new Snapshot(List.of(), List.of());
+
+    @Autowired
+    public ReferenceDataCache(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @PostConstruct
+    @Scheduled(initialDelayString = "${filmorate.reference-cache.refresh-interval-ms:300000}",
+            fixedDelayString = "${filmorate.reference-cache.refresh-interval-ms:300000}")
+    public void refresh() {
+        List<Genre> genres = jdbcTemplate.query("select * from genre order by genre_id", (rs, rowNum) ->
+                new Genre(rs.getLong("genre_id"), rs.getString("genre_name")));
+        List<MPA> mpa = jdbcTemplate.query("select * from mpa order by mpa_id", (rs, rowNum) ->
+                new MPA(rs.getLong("mpa_id"), rs.getString("mpa_name")));
+        snapshot = new Snapshot(genres, mpa);
+        log.info("Справочники загружены: жанров {}, рейтингов {}", genres.size(), mpa.size());
+    }
+
+    public Optional<Genre> findGenreById(long id) {
+        Genre[] byId = snapshot.genresById;
+        return id >= 0 && id < byId.length ? Optional.ofNullable(byId[(int) id]) : Optional.empty();
+    }
+
+    public List<Genre> findAllGenres() {
+        return snapshot.genres;
+    }
+
+    public Optional<MPA> findMPAById(long id) {
+        MPA[] byId = snapshot.mpaById;
+        return id >= 0 && id < byId.length ? Optional.ofNullable(byId[(int) id]) : Optional.empty();
+    }
+
+    public List<MPA> findAllMPA() {
+        return snapshot.mpa;
+    }
+
+    /**
+     * Версия списка жанров для ETag. Считается по содержимому, поэтому одинакова
+     * на всех экземплярах приложения и не меняется после перезапуска.
+     *
+     * @return хеш списка жанров
+     */
+    public long genresVersion() {
+        return snapshot.genres.hashCode() & 0xffffffffL;
+    }
+
+    private static final class Snapshot {
+        private final List<Genre> genres;
+        private final Genre[] genresById;
+        private final List<MPA> mpa;
+        private final MPA[] mpaById;
+
+        private Snapshot(List<Genre> genres, List<MPA> mpa) {
+            this.genres = Collections.unmodifiableList(genres);
+            this.mpa = Collections.unmodifiableList(mpa);
+            this.genresById = new Genre[genres.stream().mapToInt(g -> g.getId().intValue()).max().orElse(-1) + 1];
+            for (Genre genre : genres) {
+                genresById[genre.getId().intValue()] = genre;
+            }
+            this.mpaById = new MPA[mpa.stream().mapToInt(m -> m.getId().intValue()).max().orElse(-1) + 1];
+            for (MPA rating : mpa) {
+                mpaById[rating.getId().intValue()] = rating;
+            }
+        }
+    }
+}
@@ -0,0 +1,201 @@
+package ru.yandex.practicum.filmorate.dao.index;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Обратный индекс по названию и описанию фильмов: слово в нижнем регистре -> id фильмов.
+ * Слова хранятся в TreeMap, поэтому поиск по началу слова - это обход подотрезка ключей.
+ * Строится при старте и обновляется при создании и изменении фильма.
+ */
+@Component
+public class SearchIndex {
+    // точное совпадение слова весит больше, чем совпадение по началу
+    private static final int EXACT_SCORE = 2;
+    private static final int PREFIX_SCORE = 1;
+
+    private final Logger log = LoggerFactory.getLogger(SearchIndex.class);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final PopularityIndex popularityIndex;
+    private final NavigableMap<String, Set<Long>> titles = new TreeMap<>();
+    private final NavigableMap<String, Set<Long>> descriptions = new TreeMap<>();
+    private final Map<Long, Document> documents = new HashMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    @Autowired
+    public SearchIndex(JdbcTemplate jdbcTemplate, PopularityIndex popularityIndex) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.popularityIndex = popularityIndex;
+    }
+
+    @PostConstruct
+    public void load() {
+        lock.writeLock().lock();
+        try {
+            clear();
+            jdbcTemplate.query("SELECT ID, NAME, DESCRIPTION FROM FILMS", rs -> {
+                put(rs.getLong("ID"), rs.getString("NAME"), rs.getString("DESCRIPTION"));
+            });
+            log.info("Поисковый индекс загружен, фильмов: {}, слов в названиях: {}, в описаниях: {}",
+                    documents.size(), titles.size(), descriptions.size());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Убирает из индекса все фильмы, чтобы заполнить его заново через put
+     */
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            titles.clear();
+            descriptions.clear();
+            documents.clear();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Индексирует фильм, заменяя прежние название и описание
+     *
+     * @param filmId      id фильма
+     * @param name        название
+     * @param description описание
+     */
+    public void put(long filmId, String name, String description) {
+        Document document = new Document(tokenize(name), tokenize(description));
+        lock.writeLock().lock();
+        try {
+            Document old = documents.put(filmId, document);
+            if (old != null) {
+                unindex(titles, old.title, filmId);
+                unindex(descriptions, old.description, filmId);
+            }
+            index(titles, document.title, filmId);
+            index(descriptions, document.description, filmId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Поиск фильмов: каждое слово запроса ищется как целое слово и как начало слова.
+     * Фильм получает очки за каждое найденное слово запроса, при равенстве очков
+     * выше фильм с большим количеством лайков, затем с меньшим id.
+     *
+     * @param query         строка запроса
+     * @param byTitle       искать в названии
+     * @param byDescription искать в описании
+     * @param limit         сколько фильмов вернуть
+     * @return id найденных фильмов от наиболее подходящего
+     */
+    public List<Long> search(String query, boolean byTitle, boolean byDescription, int limit) {
+        if (limit <= 0) {
+            return List.of();
+        }
+        Set<String> terms = tokenize(query);
+        Map<Long, Integer> scores = new HashMap<>();
+        lock.readLock().lock();
+        try {
+            for (String term : terms) {
+                Map<Long, Integer> termScores = new HashMap<>();
+                if (byTitle) {
+                    match(titles, term, termScores);
+                }
+                if (byDescription) {
+                    match(descriptions, term, termScores);
+                }
+                termScores.forEach((filmId, score) -> scores.merge(filmId, score, Integer::sum));
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        Map<Long, Long> likes = new HashMap<>();
+        scores.keySet().forEach(filmId -> likes.put(filmId, popularityIndex.likes(filmId)));
+        List<Long> ids = new ArrayList<>(scores.keySet());
+        ids.sort(Comparator.comparing((Long id) -> scores.get(id)).reversed()
+                .thenComparing(Comparator.comparing((Long id) -> likes.get(id)).reversed())
+                .thenComparing(Comparator.naturalOrder()));
+        return ids.size() > limit ? new ArrayList<>(ids.subList(0, limit)) : ids;
+    }
+
+    /**
+     * Разбивает текст на слова из букв и цифр в нижнем регистре
+     *
+     * @param text текст, может быть null
+     * @return слова без повторов в порядке появления
+     */
+    private static Set<String> tokenize(String text) {
+        Set<String> tokens = new LinkedHashSet<>();
+        if (text == null) {
+            return tokens;
+        }
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean letter = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (letter && start < 0) {
+                start = i;
+            } else if (!letter && start >= 0) {
+                tokens.add(text.substring(start, i).toLowerCase(Locale.ROOT).replace('ё', 'е'));
+                start = -1;
+            }
+        }
+        return tokens;
+    }
+
+    private static void match(NavigableMap<String, Set<Long>> index, String term, Map<Long, Integer> termScores) {
+        for (Map.Entry<String, Set<Long>> entry : index.subMap(term, true, term + Character.MAX_VALUE, false)
+                .entrySet()) {
+            int score = entry.getKey().equals(term) ? EXACT_SCORE : PREFIX_SCORE;
+            for (Long filmId : entry.getValue()) {
+                termScores.merge(filmId, score, Math::max);
+            }
+        }
+    }
+
+    private static void index(Map<String, Set<Long>> index, Set<String> tokens, long filmId) {
+        for (String token : tokens) {
+            index.computeIfAbsent(token, key -> new HashSet<>()).add(filmId);
+        }
+    }
+
+    private static void unindex(Map<String, Set<Long>> index, Set<String> tokens, long filmId) {
+        for (String token : tokens) {
+            Set<Long> films = index.get(token);
+            if (films != null && films.remove(filmId) && films.isEmpty()) {
+                index.remove(token);
+            }
+        }
+    }
+
+    private static final class Document {
+        private final Set<String> title;
+        private final Set<String> description;
+
+        private Document(Set<String> title, Set<String> description) {
+            this.title = title;
+            this.description = description;
+        }
+    }
+}
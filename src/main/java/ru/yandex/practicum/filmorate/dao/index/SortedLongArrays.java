@@ -0,0 +1,73 @@
+package ru.yandex.practicum.filmorate.dao.index;
+
+import java.util.Arrays;
+
+/**
+ * Операции над отсортированными массивами id без повторов. Исходные массивы не меняются,
+ * результат - новый массив, поэтому их можно читать из других потоков без блокировок.
+ */
+public final class SortedLongArrays {
+    public static final long[] EMPTY = new long[0];
+
+    private SortedLongArrays() {
+    }
+
+    /**
+     * @return массив с добавленным id или тот же массив, если id в нем уже есть
+     */
+    public static long[] insert(long[] ids, long id) {
+        int index = Arrays.binarySearch(ids, id);
+        if (index >= 0) {
+            return ids;
+        }
+        int position = -index - 1;
+        long[] updated = new long[ids.length + 1];
+        System.arraycopy(ids, 0, updated, 0, position);
+        updated[position] = id;
+        System.arraycopy(ids, position, updated, position + 1, ids.length - position);
+        return updated;
+    }
+
+    /**
+     * @return массив без id или тот же массив, если id в нем нет
+     */
+    public static long[] remove(long[] ids, long id) {
+        int index = Arrays.binarySearch(ids, id);
+        if (index < 0) {
+            return ids;
+        }
+        if (ids.length == 1) {
+            return EMPTY;
+        }
+        long[] updated = new long[ids.length - 1];
+        System.arraycopy(ids, 0, updated, 0, index);
+        System.arraycopy(ids, index + 1, updated, index, ids.length - index - 1);
+        return updated;
+    }
+
+    public static boolean contains(long[] ids, long id) {
+        return Arrays.binarySearch(ids, id) >= 0;
+    }
+
+    /**
+     * Пересечение за один проход по обоим массивам
+     */
+    public static long[] intersect(long[] first, long[] second) {
+        long[] result = new long[Math.min(first.length, second.length)];
+        int i = 0;
+        int j = 0;
+        int size = 0;
+        while (i < first.length && j < second.length) {
+            if (first[i] < second[j]) {
+                i++;
+            } else if (first[i] > second[j]) {
+                j++;
+            } else {
+                result[size++] = first[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(result, size);
+    }
+}
@@ -0,0 +1,229 @@
+package ru.yandex.practicum.filmorate.dao.index;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+import java.util.function.LongSupplier;
+
+/**
+ * Лайки за последний час, сутки и неделю. Каждое окно - кольцо корзин фиксированной длины,
+ * в корзине хранится, сколько лайков получил каждый фильм за ее интервал. Когда корзина
+ * выходит из окна, ее лайки вычитаются из сумм фильмов, поэтому рейтинг окна
+ * поддерживается по мере событий, без чтения FILM_LIKES.
+ */
+@Component
+public class TrendingIndex {
+    public static final Duration HOUR = Duration.ofHours(1);
+    public static final Duration DAY = Duration.ofHours(24);
+    public static final Duration WEEK = Duration.ofDays(7);
+
+    private final Logger log = LoggerFactory.getLogger(TrendingIndex.class);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final LongSupplier clock;
+    private final Map<Duration, Window> windows = new LinkedHashMap<>();
+
+    @Autowired
+    public TrendingIndex(JdbcTemplate jdbcTemplate) {
+        this(jdbcTemplate, System::currentTimeMillis);
+    }
+
+    // часы подменяются в тестах, чтобы проверить выход корзин из окна без ожидания
+    TrendingIndex(JdbcTemplate jdbcTemplate, LongSupplier clock) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.clock = clock;
+        windows.put(HOUR, new Window(Duration.ofMinutes(1), 60));
+        windows.put(DAY, new Window(Duration.ofMinutes(15), 96));
+        windows.put(WEEK, new Window(Duration.ofHours(1), 168));
+    }
+
+    @PostConstruct
+    public void load() {
+        Timestamp weekAgo = new Timestamp(clock.getAsLong() - WEEK.toMillis());
+        load(consumer -> jdbcTemplate.query("SELECT FILM_ID, CREATED_AT FROM FILM_LIKES WHERE CREATED_AT >= ?", rs -> {
+            consumer.accept(rs.getLong("FILM_ID"), 0, rs.getTimestamp("CREATED_AT").getTime());
+        }, weekAgo));
+    }
+
+    /**
+     * Строит окна заново по лайкам источника, лайки старше недели пропускаются
+     *
+     * @param source лайки со временем
+     */
+    public synchronized void load(LikeSource source) {
+        long now = clock.getAsLong();
+        windows.values().forEach(window -> window.reset(now));
+        int[] loaded = {0};
+        source.forEachLike((filmId, userId, time) -> {
+            if (time >= now - WEEK.toMillis()) {
+                windows.values().forEach(window -> window.add(filmId, time, 1));
+                loaded[0]++;
+            }
+        });
+        log.info("Тренды загружены, лайков за неделю: {}", loaded[0]);
+    }
+
+    /**
+     * Учитывает лайк
+     *
+     * @param filmId id фильма
+     * @param time   время лайка в миллисекундах
+     */
+    public synchronized void like(long filmId, long time) {
+        long now = clock.getAsLong();
+        for (Window window : windows.values()) {
+            window.advance(now);
+            window.add(filmId, time, 1);
+        }
+    }
+
+    /**
+     * Вычитает снятый лайк, если он еще внутри окна
+     *
+     * @param filmId id фильма
+     * @param likedAt время, когда лайк был поставлен, null если неизвестно
+     */
+    public synchronized void unlike(long filmId, Timestamp likedAt) {
+        if (likedAt == null) {
+            return;
+        }
+        long now = clock.getAsLong();
+        for (Window window : windows.values()) {
+            window.advance(now);
+            window.add(filmId, likedAt.getTime(), -1);
+        }
+    }
+
+    /**
+     * Фильмы с наибольшим числом лайков за окно
+     *
+     * @param window длительность окна: HOUR, DAY или WEEK
+     * @param count  сколько фильмов вернуть
+     * @return id фильмов от самого популярного за окно
+     */
+    public synchronized List<Long> top(Duration window, int count) {
+        Window ranking = windows.get(window);
+        if (ranking == null) {
+            throw new IllegalArgumentException("Неизвестное окно " + window);
+        }
+        ranking.advance(clock.getAsLong());
+        return ranking.top(count);
+    }
+
+    private static final class Window {
+        private static final Comparator<Entry> BY_LIKES_DESC = Comparator
+                .comparingLong((Entry e) -> e.likes).reversed()
+                .thenComparingLong(e -> e.filmId);
+
+        private final long bucketMillis;
+        private final long[] bucketNumbers;
+        private final List<Map<Long, Integer>> buckets;
+        private final Map<Long, Entry> totals = new HashMap<>();
+        private final NavigableSet<Entry> ranking = new TreeSet<>(BY_LIKES_DESC);
+        private long head;
+
+        private Window(Duration bucket, int size) {
+            this.bucketMillis = bucket.toMillis();
+            this.bucketNumbers = new long[size];
+            this.buckets = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                buckets.add(new HashMap<>());
+            }
+        }
+
+        private void reset(long now) {
+            totals.clear();
+            ranking.clear();
+            head = now / bucketMillis;
+            for (int i = 0; i < bucketNumbers.length; i++) {
+                buckets.get(i).clear();
+                // номера корзин кольца: последние size интервалов до текущего включительно
+                long number = head - ((head - i) % bucketNumbers.length + bucketNumbers.length) % bucketNumbers.length;
+                bucketNumbers[i] = number;
+            }
+        }
+
+        // сдвигает окно к текущему времени, вычитая лайки из вышедших корзин;
+        // если окно ушло целиком, цикл пройдет ровно по всем size корзинам
+        private void advance(long now) {
+            long current = now / bucketMillis;
+            long from = Math.max(head + 1, current - bucketNumbers.length + 1);
+            for (long number = from; number <= current; number++) {
+                int slot = (int) (number % bucketNumbers.length);
+                buckets.get(slot).forEach((filmId, likes) -> change(filmId, -likes));
+                buckets.get(slot).clear();
+                bucketNumbers[slot] = number;
+            }
+            head = Math.max(head, current);
+        }
+
+        private void add(long filmId, long time, int delta) {
+            long number = Math.min(time / bucketMillis, head);
+            if (number <= head - bucketNumbers.length) {
+                return;
+            }
+            int slot = (int) (number % bucketNumbers.length);
+            if (bucketNumbers[slot] != number) {
+                return;
+            }
+            Map<Long, Integer> bucket = buckets.get(slot);
+            int likes = bucket.getOrDefault(filmId, 0) + delta;
+            if (likes < 0) {
+                return;
+            }
+            if (likes == 0) {
+                bucket.remove(filmId);
+            } else {
+                bucket.put(filmId, likes);
+            }
+            change(filmId, delta);
+        }
+
+        private void change(long filmId, long delta) {
+            Entry old = totals.remove(filmId);
+            if (old != null) {
+                ranking.remove(old);
+            }
+            long likes = (old == null ? 0 : old.likes) + delta;
+            if (likes > 0) {
+                Entry entry = new Entry(filmId, likes);
+                totals.put(filmId, entry);
+                ranking.add(entry);
+            }
+        }
+
+        private List<Long> top(int count) {
+            List<Long> ids = new ArrayList<>(Math.max(0, Math.min(count, ranking.size())));
+            Iterator<Entry> iterator = ranking.iterator();
+            while (ids.size() < count && iterator.hasNext()) {
+                ids.add(iterator.next().filmId);
+            }
+            return ids;
+        }
+    }
+
+    private static final class Entry {
+        private final long filmId;
+        private final long likes;
+
+        private Entry(long filmId, long likes) {
+            this.filmId = filmId;
+            this.likes = likes;
+        }
+    }
+}
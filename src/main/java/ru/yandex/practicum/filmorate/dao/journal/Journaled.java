@@ -0,0 +1,15 @@
+package ru.yandex.practicum.filmorate.dao.journal;
+
+/**
+ * Хранилище, данные которого попадают в снимок журнала
+ */
+public interface Journaled {
+
+    /**
+     * Записывает все текущие данные хранилища как изменения put*. Вызывается без остановки
+     * записи: изменения, сделанные во время снимка, есть и в новом файле журнала.
+     *
+     * @param out приемник изменений снимка
+     */
+    void snapshot(Mutations out);
+}
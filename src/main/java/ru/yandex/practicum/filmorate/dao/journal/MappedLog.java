@@ -0,0 +1,160 @@
+package ru.yandex.practicum.filmorate.dao.journal;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * Журнал только на дозапись из файлов фиксированного размера, отображенных в память.
+ * Запись - длина, CRC32 и содержимое; файл создается заполненным нулями, поэтому нулевая
+ * длина означает конец записей. Когда запись не помещается, начинается следующий файл
+ * с номером на единицу больше. Принудительный сброс на диск - force() отображения.
+ */
+final class MappedLog implements Closeable {
+    static final String PREFIX = "log-";
+    static final String SUFFIX = ".wal";
+    private static final int HEADER_SIZE = 8;
+
+    private final Path dir;
+    private final int segmentSize;
+    private final CRC32 crc = new CRC32();
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+    private long generation;
+
+    /**
+     * @param dir         каталог журнала
+     * @param generation  номер первого файла, файл не должен существовать
+     * @param segmentSize размер файла в байтах
+     */
+    MappedLog(Path dir, long generation, int segmentSize) {
+        this.dir = dir;
+        this.segmentSize = segmentSize;
+        open(generation);
+    }
+
+    static Path file(Path dir, long generation) {
+        return dir.resolve(String.format("%s%020d%s", PREFIX, generation, SUFFIX));
+    }
+
+    synchronized long generation() {
+        return generation;
+    }
+
+    /**
+     * Дописывает запись, при нехватке места переходит к следующему файлу
+     *
+     * @param record содержимое записи
+     * @param force  сбросить запись на диск до возврата
+     */
+    synchronized void append(byte[] record, boolean force) {
+        if (HEADER_SIZE + record.length > segmentSize) {
+            throw new IllegalArgumentException("Запись журнала больше файла журнала: " + record.length);
+        }
+        if (HEADER_SIZE + record.length > buffer.remaining()) {
+            roll();
+        }
+        crc.reset();
+        crc.update(record);
+        // длина пишется последней: до этого момента запись не видна при восстановлении
+        int start = buffer.position();
+        buffer.position(start + HEADER_SIZE);
+        buffer.put(record);
+        buffer.putInt(start + 4, (int) crc.getValue());
+        buffer.putInt(start, record.length);
+        if (force) {
+            buffer.force();
+        }
+    }
+
+    /**
+     * Закрывает текущий файл и начинает следующий
+     *
+     * @return номер нового файла
+     */
+    synchronized long roll() {
+        buffer.force();
+        closeChannel();
+        open(generation + 1);
+        return generation;
+    }
+
+    synchronized void force() {
+        buffer.force();
+    }
+
+    @Override
+    public synchronized void close() {
+        buffer.force();
+        closeChannel();
+    }
+
+    /**
+     * Читает записи файла журнала до конца записей или до первой поврежденной записи,
+     * которая остается от прерванной записи при сбое
+     *
+     * @param file     файл журнала
+     * @param consumer получатель записей
+     * @return число прочитанных записей
+     */
+    static int replay(Path file, Consumer<byte[]> consumer) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            CRC32 crc = new CRC32();
+            int records = 0;
+            while (buffer.remaining() >= HEADER_SIZE) {
+                int length = buffer.getInt();
+                int checksum = buffer.getInt();
+                if (length <= 0 || length > buffer.remaining()) {
+                    break;
+                }
+                byte[] record = new byte[length];
+                buffer.get(record);
+                crc.reset();
+                crc.update(record);
+                if ((int) crc.getValue() != checksum) {
+                    break;
+                }
+                consumer.accept(record);
+                records++;
+            }
+            return records;
+        }
+    }
+
+    private void open(long generation) {
+        try {
+            channel = FileChannel.open(file(dir, generation), StandardOpenOption.CREATE_NEW,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+            this.generation = generation;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Не удалось открыть файл журнала в " + dir, e);
+        }
+    }
+
+    private void closeChannel() {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    static boolean isLog(Path file) {
+        String name = file.getFileName().toString();
+        return name.startsWith(PREFIX) && name.endsWith(SUFFIX);
+    }
+
+    static long generationOf(Path file) {
+        String name = file.getFileName().toString();
+        return Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+    }
+}
@@ -0,0 +1,199 @@
+package ru.yandex.practicum.filmorate.dao.journal;
+
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.MPA;
+import ru.yandex.practicum.filmorate.model.User;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.LocalDate;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Двоичная запись изменений: байт типа и поля фиксированной длины, строки в формате writeUTF,
+ * даты - номер дня. Кодирует вызовы Mutations в массивы байт и обратно.
+ */
+final class MutationCodec implements Mutations {
+    private static final byte USER = 1;
+    private static final byte FRIEND = 2;
+    private static final byte UNFRIEND = 3;
+    private static final byte FILM = 4;
+    private static final byte LIKE = 5;
+    private static final byte UNLIKE = 6;
+
+    private final Consumer<byte[]> out;
+    private final ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+    private final DataOutputStream data = new DataOutputStream(bytes);
+
+    /**
+     * @param out получатель закодированных записей; кодек не потокобезопасен
+     */
+    MutationCodec(Consumer<byte[]> out) {
+        this.out = out;
+    }
+
+    @Override
+    public void putUser(User user) {
+        write(() -> {
+            data.writeByte(USER);
+            data.writeLong(user.getId());
+            writeString(user.getEmail());
+            writeString(user.getLogin());
+            writeString(user.getName());
+            writeDate(user.getBirthday());
+        });
+    }
+
+    @Override
+    public void putFriend(long userId, long friendId, boolean confirmed) {
+        write(() -> {
+            data.writeByte(FRIEND);
+            data.writeLong(userId);
+            data.writeLong(friendId);
+            data.writeBoolean(confirmed);
+        });
+    }
+
+    @Override
+    public void removeFriend(long userId, long friendId) {
+        write(() -> {
+            data.writeByte(UNFRIEND);
+            data.writeLong(userId);
+            data.writeLong(friendId);
+        });
+    }
+
+    @Override
+    public void putFilm(Film film) {
+        write(() -> {
+            data.writeByte(FILM);
+            data.writeLong(film.getId());
+            writeString(film.getName());
+            writeString(film.getDescription());
+            writeDate(film.getReleaseDate());
+            data.writeInt(film.getDuration());
+            data.writeLong(film.getMpa() == null ? 0 : film.getMpa().getId());
+            Set<Genre> genres = film.getGenres() == null ? Set.of() : film.getGenres();
+            data.writeShort(genres.size());
+            for (Genre genre : genres) {
+                data.writeLong(genre.getId());
+            }
+        });
+    }
+
+    @Override
+    public void putLike(long filmId, long userId, long time) {
+        write(() -> {
+            data.writeByte(LIKE);
+            data.writeLong(filmId);
+            data.writeLong(userId);
+            data.writeLong(time);
+        });
+    }
+
+    @Override
+    public void removeLike(long filmId, long userId) {
+        write(() -> {
+            data.writeByte(UNLIKE);
+            data.writeLong(filmId);
+            data.writeLong(userId);
+        });
+    }
+
+    /**
+     * Разбирает запись и передает изменение получателю
+     *
+     * @param record запись, закодированная этим кодеком
+     * @param target получатель изменения
+     */
+    static void decode(byte[] record, Mutations target) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(record))) {
+            byte type = in.readByte();
+            switch (type) {
+                case USER:
+                    target.putUser(new User(in.readLong(), readString(in), readString(in), readString(in),
+                            readDate(in)));
+                    break;
+                case FRIEND:
+                    target.putFriend(in.readLong(), in.readLong(), in.readBoolean());
+                    break;
+                case UNFRIEND:
+                    target.removeFriend(in.readLong(), in.readLong());
+                    break;
+                case FILM:
+                    target.putFilm(readFilm(in));
+                    break;
+                case LIKE:
+                    target.putLike(in.readLong(), in.readLong(), in.readLong());
+                    break;
+                case UNLIKE:
+                    target.removeLike(in.readLong(), in.readLong());
+                    break;
+                default:
+                    throw new IllegalStateException("Неизвестный тип записи журнала " + type);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static Film readFilm(DataInputStream in) throws IOException {
+        Film.FilmBuilder film = Film.builder()
+                .id(in.readLong())
+                .name(readString(in))
+                .description(readString(in))
+                .releaseDate(readDate(in))
+                .duration(in.readInt());
+        long mpaId = in.readLong();
+        film.mpa(mpaId == 0 ? null : new MPA(mpaId, null));
+        int genres = in.readShort();
+        Set<Genre> ids = new LinkedHashSet<>();
+        for (int i = 0; i < genres; i++) {
+            ids.add(new Genre(in.readLong(), null));
+        }
+        return film.genres(ids).build();
+    }
+
+    private void write(Writer writer) {
+        bytes.reset();
+        try {
+            writer.write();
+            data.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        out.accept(bytes.toByteArray());
+    }
+
+    private void writeString(String value) throws IOException {
+        data.writeBoolean(value != null);
+        if (value != null) {
+            data.writeUTF(value);
+        }
+    }
+
+    private void writeDate(LocalDate date) throws IOException {
+        data.writeLong(date == null ? Long.MIN_VALUE : date.toEpochDay());
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static LocalDate readDate(DataInputStream in) throws IOException {
+        long day = in.readLong();
+        return day == Long.MIN_VALUE ? null : LocalDate.ofEpochDay(day);
+    }
+
+    @FunctionalInterface
+    private interface Writer {
+        void write() throws IOException;
+    }
+}
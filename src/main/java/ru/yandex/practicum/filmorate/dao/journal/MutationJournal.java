@@ -0,0 +1,267 @@
+package ru.yandex.practicum.filmorate.dao.journal;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Profile;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.User;
+
+import javax.annotation.PreDestroy;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Сохранение данных хранилищ в памяти без базы: каждое изменение дописывается в журнал
+ * {@link MappedLog}, а периодически все данные записываются компактным снимком, после чего
+ * старые файлы журнала удаляются. При старте загружается последний снимок (если его нет -
+ * данные из базы) и поверх него воспроизводятся файлы журнала, записанные после снимка.
+ * Снимок snapshot-N.bin содержит все изменения из файлов журнала с номером меньше N.
+ * <p>
+ * Сброс на диск задается свойством filmorate.journal.fsync:
+ * always - после каждой записи, изменение не теряется даже при отключении питания;
+ * interval - раз в filmorate.journal.fsync-interval-ms, при сбое ОС теряется не больше интервала;
+ * never - когда решит ОС; при падении процесса записи не теряются в любом режиме,
+ * так как уже лежат в страницах отображенного файла.
+ * Включается свойством filmorate.journal.enabled=true вместе с профилем inmemory.
+ */
+@Component
+@Profile("inmemory")
+@ConditionalOnProperty(name = "filmorate.journal.enabled", havingValue = "true")
+public class MutationJournal implements Mutations {
+    private static final String SNAPSHOT_PREFIX = "snapshot-";
+    private static final String SNAPSHOT_SUFFIX = ".bin";
+    private static final int SNAPSHOT_MAGIC = 0x464C4D31;
+
+    private final Logger log = LoggerFactory.getLogger(MutationJournal.class);
+
+    private final Path dir;
+    private final String fsync;
+    private final ObjectProvider<Journaled> sources;
+    private final Path latestSnapshot;
+    private final List<Path> logs;
+    private final MappedLog mappedLog;
+    private final MutationCodec codec;
+
+    @Autowired
+    public MutationJournal(@Value("${filmorate.journal.dir:./db/journal}") String dir,
+                           @Value("${filmorate.journal.fsync:interval}") String fsync,
+                           @Value("${filmorate.journal.segment-size:67108864}") int segmentSize,
+                           ObjectProvider<Journaled> sources) throws IOException {
+        if (!List.of("always", "interval", "never").contains(fsync)) {
+            throw new IllegalArgumentException("filmorate.journal.fsync должен быть always, interval или never");
+        }
+        this.dir = Paths.get(dir);
+        this.fsync = fsync;
+        this.sources = sources;
+        Files.createDirectories(this.dir);
+        Files.deleteIfExists(this.dir.resolve(SNAPSHOT_PREFIX + "tmp"));
+        this.latestSnapshot = files(this::isSnapshot).reduce((first, second) -> second).orElse(null);
+        long from = latestSnapshot == null ? 0 : generationOf(latestSnapshot);
+        this.logs = files(MappedLog::isLog)
+                .filter(file -> MappedLog.generationOf(file) >= from)
+                .collect(Collectors.toList());
+        // новые изменения пишутся в новый файл, недописанный хвост старого не трогаем
+        long last = files(MappedLog::isLog).mapToLong(MappedLog::generationOf).max().orElse(from - 1);
+        this.mappedLog = new MappedLog(this.dir, Math.max(last + 1, from), segmentSize);
+        boolean force = "always".equals(fsync);
+        this.codec = new MutationCodec(record -> mappedLog.append(record, force));
+        log.info("Журнал изменений {}: снимок {}, файлов журнала для восстановления {}, fsync {}",
+                this.dir, latestSnapshot == null ? "нет" : latestSnapshot.getFileName(), logs.size(), fsync);
+    }
+
+    /**
+     * Восстанавливает данные хранилища: снимок или загрузка из базы, затем файлы журнала
+     *
+     * @param target   хранилище, принимающее свои изменения
+     * @param loadBase загрузка из базы, если снимка еще нет
+     */
+    public void recover(Mutations target, Runnable loadBase) {
+        long started = System.nanoTime();
+        int records = 0;
+        try {
+            if (latestSnapshot == null) {
+                loadBase.run();
+            } else {
+                records += readSnapshot(latestSnapshot, target);
+            }
+            for (Path file : logs) {
+                records += MappedLog.replay(file, record -> MutationCodec.decode(record, target));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Не удалось восстановить данные из журнала " + dir, e);
+        }
+        log.info("Восстановлено записей журнала: {} за {} мс", records, (System.nanoTime() - started) / 1_000_000);
+    }
+
+    @Override
+    public void putUser(User user) {
+        synchronized (codec) {
+            codec.putUser(user);
+        }
+    }
+
+    @Override
+    public void putFriend(long userId, long friendId, boolean confirmed) {
+        synchronized (codec) {
+            codec.putFriend(userId, friendId, confirmed);
+        }
+    }
+
+    @Override
+    public void removeFriend(long userId, long friendId) {
+        synchronized (codec) {
+            codec.removeFriend(userId, friendId);
+        }
+    }
+
+    @Override
+    public void putFilm(Film film) {
+        synchronized (codec) {
+            codec.putFilm(film);
+        }
+    }
+
+    @Override
+    public void putLike(long filmId, long userId, long time) {
+        synchronized (codec) {
+            codec.putLike(filmId, userId, time);
+        }
+    }
+
+    @Override
+    public void removeLike(long filmId, long userId) {
+        synchronized (codec) {
+            codec.removeLike(filmId, userId);
+        }
+    }
+
+    /**
+     * Записывает снимок всех хранилищ. Сначала начинается новый файл журнала N, затем
+     * данные пишутся во временный файл и переименовываются в snapshot-N.bin; только после
+     * этого удаляются старые снимок и файлы журнала. Прерванный снимок не портит восстановление.
+     */
+    @Scheduled(initialDelayString = "${filmorate.journal.snapshot-interval-ms:600000}",
+            fixedDelayString = "${filmorate.journal.snapshot-interval-ms:600000}")
+    public synchronized void snapshot() {
+        long started = System.nanoTime();
+        long generation = mappedLog.roll();
+        Path temp = dir.resolve(SNAPSHOT_PREFIX + "tmp");
+        Path target = dir.resolve(String.format("%s%020d%s", SNAPSHOT_PREFIX, generation, SNAPSHOT_SUFFIX));
+        int[] records = {0};
+        try {
+            try (OutputStream file = Files.newOutputStream(temp);
+                 DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file, 1 << 16))) {
+                out.writeInt(SNAPSHOT_MAGIC);
+                CRC32 crc = new CRC32();
+                MutationCodec writer = new MutationCodec(record -> {
+                    crc.reset();
+                    crc.update(record);
+                    try {
+                        out.writeInt(record.length);
+                        out.writeInt((int) crc.getValue());
+                        out.write(record);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    records[0]++;
+                });
+                sources.orderedStream().forEach(source -> source.snapshot(writer));
+                out.writeInt(0);
+            }
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                channel.force(true);
+            }
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+            try (Stream<Path> old = files(file -> isSnapshot(file) && generationOf(file) < generation
+                    || MappedLog.isLog(file) && MappedLog.generationOf(file) < generation)) {
+                for (Path file : (Iterable<Path>) old::iterator) {
+                    Files.delete(file);
+                }
+            }
+        } catch (IOException e) {
+            log.error("Не удалось записать снимок журнала {}", target, e);
+            return;
+        }
+        log.info("Снимок {} записан: {} записей за {} мс", target.getFileName(), records[0],
+                (System.nanoTime() - started) / 1_000_000);
+    }
+
+    @Scheduled(fixedDelayString = "${filmorate.journal.fsync-interval-ms:1000}")
+    public void flush() {
+        if ("interval".equals(fsync)) {
+            mappedLog.force();
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        mappedLog.close();
+    }
+
+    private int readSnapshot(Path file, Mutations target) throws IOException {
+        try (InputStream stream = Files.newInputStream(file);
+             DataInputStream in = new DataInputStream(new BufferedInputStream(stream, 1 << 16))) {
+            if (in.readInt() != SNAPSHOT_MAGIC) {
+                throw new IllegalStateException("Файл " + file + " не является снимком журнала");
+            }
+            CRC32 crc = new CRC32();
+            int records = 0;
+            for (int length = in.readInt(); length > 0; length = in.readInt()) {
+                int checksum = in.readInt();
+                byte[] record = new byte[length];
+                in.readFully(record);
+                crc.reset();
+                crc.update(record);
+                if ((int) crc.getValue() != checksum) {
+                    throw new IllegalStateException("Снимок " + file + " поврежден, запись " + records);
+                }
+                MutationCodec.decode(record, target);
+                records++;
+            }
+            return records;
+        } catch (EOFException e) {
+            throw new IllegalStateException("Снимок " + file + " обрезан", e);
+        }
+    }
+
+    // файлы каталога с подходящим именем, по возрастанию номера
+    private Stream<Path> files(Predicate<Path> filter) throws IOException {
+        try (Stream<Path> list = Files.list(dir)) {
+            return list.filter(filter).sorted().collect(Collectors.toList()).stream();
+        }
+    }
+
+    private boolean isSnapshot(Path file) {
+        String name = file.getFileName().toString();
+        return name.startsWith(SNAPSHOT_PREFIX) && name.endsWith(SNAPSHOT_SUFFIX);
+    }
+
+    private static long generationOf(Path file) {
+        String name = file.getFileName().toString();
+        return Long.parseLong(name.substring(SNAPSHOT_PREFIX.length(), name.length() - SNAPSHOT_SUFFIX.length()));
+    }
+}
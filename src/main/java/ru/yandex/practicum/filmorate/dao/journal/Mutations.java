@@ -0,0 +1,39 @@
+package ru.yandex.practicum.filmorate.dao.journal;
+
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.User;
+
+/**
+ * Изменения данных хранилищ в памяти. Каждое изменение задает итоговое состояние записи,
+ * а не команду, поэтому повторное применение ничего не меняет: снимок и журнал можно
+ * воспроизводить поверх уже примененных изменений. Хранилище переопределяет только свои методы.
+ */
+public interface Mutations {
+
+    default void putUser(User user) {
+    }
+
+    /**
+     * @param confirmed подтверждена ли заявка после изменения
+     */
+    default void putFriend(long userId, long friendId, boolean confirmed) {
+    }
+
+    default void removeFriend(long userId, long friendId) {
+    }
+
+    /**
+     * @param film фильм с рейтингом и жанрами, у которых достаточно id
+     */
+    default void putFilm(Film film) {
+    }
+
+    /**
+     * @param time время лайка в миллисекундах
+     */
+    default void putLike(long filmId, long userId, long time) {
+    }
+
+    default void removeLike(long filmId, long userId) {
+    }
+}
@@ -0,0 +1,23 @@
+package ru.yandex.practicum.filmorate.datasource;
+
+/**
+ * База, в которую идут запросы текущего потока. Пока маршрут не задан, используется основная.
+ */
+public enum DataSourceRoute {
+    PRIMARY,
+    REPLICA;
+
+    private static final ThreadLocal<DataSourceRoute> CURRENT = new ThreadLocal<>();
+
+    public static DataSourceRoute current() {
+        return CURRENT.get();
+    }
+
+    static void set(DataSourceRoute route) {
+        if (route == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(route);
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package ru.yandex.practicum.filmorate.datasource;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.controller.RequestHandle;
+
+import javax.servlet.http.Cookie;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Выбирает базу для вызовов FilmStorage и UserStorage: чтение - реплика, изменения - основная база.
+ * Маршрут задает самый внешний вызов, вложенные вызовы идут туда же, поэтому проверки внутри
+ * изменения читают основную базу. Чтобы клиент видел свои изменения, после изменения ему ставится
+ * cookie с временем записи, и его чтения read-your-writes-ms идут в основную базу.
+ * Популярные, поиск, тренды, рекомендации и друзья берут id из индексов в памяти, которые
+ * обновляются записями в основную базу, поэтому и строки для них читаются из основной базы:
+ * в отстающей реплике части этих id еще нет, и фильмы молча пропали бы из ответа.
+ */
+@Aspect
+@Component
+@ConditionalOnProperty(name = "filmorate.datasource.replica.url")
+public class ReadRoutingAspect {
+    static final String LAST_WRITE_COOKIE = "filmorate-last-write";
+    private static final Set<String> INDEX_READS = Set.of("getFilmQuantityLike", "getPopularVersion", "search",
+            "getTrending", "recommendations", "getFriends", "commonFriends");
+
+    private final ReplicaLagMonitor lagMonitor;
+    private final long readYourWritesMs;
+
+    @Autowired
+    public ReadRoutingAspect(ReplicaLagMonitor lagMonitor,
+                             @Value("${filmorate.datasource.replica.read-your-writes-ms:5000}") long readYourWritesMs) {
+        this.lagMonitor = lagMonitor;
+        this.readYourWritesMs = readYourWritesMs;
+    }
+
+    @Around("execution(public * ru.yandex.practicum.filmorate.dao.FilmStorage+.*(..)) || " +
+            "execution(public * ru.yandex.practicum.filmorate.dao.UserStorage+.*(..))")
+    public Object route(ProceedingJoinPoint joinPoint) throws Throwable {
+        if (DataSourceRoute.current() != null) {
+            return joinPoint.proceed();
+        }
+        String method = joinPoint.getSignature().getName();
+        boolean read = isRead(method);
+        DataSourceRoute.set(read && !INDEX_READS.contains(method) && lagMonitor.isFresh() && !recentlyWrote()
+                ? DataSourceRoute.REPLICA : DataSourceRoute.PRIMARY);
+        try {
+            Object result = joinPoint.proceed();
+            if (!read) {
+                markWrite();
+            }
+            return result;
+        } finally {
+            DataSourceRoute.set(null);
+        }
+    }
+
+    private static boolean isRead(String method) {
+        return method.startsWith("find") || method.startsWith("get") || method.equals("streamAll")
+                || INDEX_READS.contains(method);
+    }
+
+    // cookie прочитаны в потоке запроса, поток хранилища к самому запросу не обращается
+    private boolean recentlyWrote() {
+        Optional<String> lastWrite = RequestHandle.current().flatMap(request -> request.cookie(LAST_WRITE_COOKIE));
+        if (lastWrite.isEmpty()) {
+            return false;
+        }
+        try {
+            return System.currentTimeMillis() - Long.parseLong(lastWrite.get()) < readYourWritesMs;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    // после тайм-аута запроса cookie не ставится: ответ уже отправлен
+    private void markWrite() {
+        RequestHandle.current().ifPresent(request -> {
+            Cookie cookie = new Cookie(LAST_WRITE_COOKIE, String.valueOf(System.currentTimeMillis()));
+            cookie.setPath("/");
+            cookie.setHttpOnly(true);
+            cookie.setMaxAge((int) Math.max(1, readYourWritesMs / 1000));
+            request.addCookie(cookie);
+        });
+    }
+}
@@ -0,0 +1,58 @@
+package ru.yandex.practicum.filmorate.datasource;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+
+import javax.sql.DataSource;
+
+/**
+ * Разделение чтения и записи: при заданном filmorate.datasource.replica.url основным DataSource
+ * становится маршрутизатор между базой из spring.datasource.* и репликой. Запись, миграции и
+ * фоновые задачи идут в основную базу, чтение хранилищ - в реплику (см. ReadRoutingAspect).
+ * Реплику наполняет SnapshotReplicator, копируя в нее снимки основной базы. Если реплику
+ * поддерживает внешняя репликация, например потоковая репликация PostgreSQL, копирование
+ * выключается filmorate.datasource.replica.snapshot.enabled=false; когда изменения до реплики
+ * не доходят, все чтение остается в основной базе (ReplicaLagMonitor предупреждает об этом в логе).
+ */
+@Configuration
+@ConditionalOnProperty(name = "filmorate.datasource.replica.url")
+public class ReplicaConfiguration {
+
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource primaryDataSource(DataSourceProperties properties) {
+        return properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+    }
+
+    @Bean
+    @ConfigurationProperties("filmorate.datasource.replica.hikari")
+    public HikariDataSource replicaDataSource(DataSourceProperties properties,
+                                              @Value("${filmorate.datasource.replica.url}") String url,
+                                              @Value("${filmorate.datasource.replica.username:${spring.datasource.username:}}")
+                                              String username,
+                                              @Value("${filmorate.datasource.replica.password:${spring.datasource.password:}}")
+                                              String password) {
+        HikariDataSource dataSource = DataSourceBuilder.create()
+                .type(HikariDataSource.class)
+                .driverClassName(properties.getDriverClassName())
+                .url(url)
+                .username(username)
+                .password(password)
+                .build();
+        dataSource.setPoolName("filmorate-replica");
+        return dataSource;
+    }
+
+    @Bean
+    @Primary
+    public DataSource dataSource(HikariDataSource primaryDataSource, HikariDataSource replicaDataSource) {
+        return new ReadWriteRoutingDataSource(primaryDataSource, replicaDataSource);
+    }
+}
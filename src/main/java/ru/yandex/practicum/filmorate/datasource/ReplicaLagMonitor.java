@@ -0,0 +1,99 @@
+package ru.yandex.practicum.filmorate.datasource;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.sql.Timestamp;
+
+/**
+ * Отставание реплики: основная база раз в heartbeat-interval-ms записывает текущее время
+ * в REPLICATION_HEARTBEAT, а монитор читает его из реплики. Если отставание больше
+ * max-staleness-ms или реплика недоступна, чтение временно переключается на основную базу.
+ * Саму метку в реплику переносит SnapshotReplicator или внешняя репликация; если метка в реплике с первого чтения
+ * не меняется, монитор один раз пишет, что реплика не получает изменений.
+ */
+@Component
+@ConditionalOnProperty(name = "filmorate.datasource.replica.url")
+public class ReplicaLagMonitor {
+    private final Logger log = LoggerFactory.getLogger(ReplicaLagMonitor.class);
+
+    private final JdbcTemplate primary;
+    private final JdbcTemplate replica;
+    private final long maxStalenessMs;
+    private volatile double lagMs = Double.NaN;
+    private String lastFailure;
+    private long firstReplicated = Long.MIN_VALUE;
+    private boolean warnedNotReplicated;
+    private volatile boolean fresh;
+
+    @Autowired
+    public ReplicaLagMonitor(@Qualifier("primaryDataSource") HikariDataSource primaryDataSource,
+                             @Qualifier("replicaDataSource") HikariDataSource replicaDataSource,
+                             @Value("${filmorate.datasource.replica.max-staleness-ms:1000}") long maxStalenessMs,
+                             MeterRegistry registry) {
+        this.primary = new JdbcTemplate(primaryDataSource);
+        this.replica = new JdbcTemplate(replicaDataSource);
+        this.maxStalenessMs = maxStalenessMs;
+        Gauge.builder("filmorate.datasource.replica.lag", this, monitor -> monitor.lagMs)
+                .description("Отставание реплики от основной базы")
+                .baseUnit("milliseconds")
+                .register(registry);
+    }
+
+    /**
+     * @return true, если реплика отстает не больше чем на max-staleness-ms
+     */
+    public boolean isFresh() {
+        return fresh;
+    }
+
+    @Scheduled(fixedDelayString = "${filmorate.datasource.replica.heartbeat-interval-ms:500}")
+    public void heartbeat() {
+        long now = System.currentTimeMillis();
+        String failure = null;
+        try {
+            primary.update("UPDATE REPLICATION_HEARTBEAT SET UPDATED_AT = ? WHERE ID = 1", new Timestamp(now));
+            Timestamp replicated = replica.queryForObject(
+                    "SELECT UPDATED_AT FROM REPLICATION_HEARTBEAT WHERE ID = 1", Timestamp.class);
+            lagMs = Math.max(0, now - replicated.getTime());
+            checkReplicated(replicated.getTime());
+        } catch (DataAccessException e) {
+            lagMs = Double.NaN;
+            failure = e.getMessage();
+        }
+        boolean wasFresh = fresh;
+        fresh = lagMs <= maxStalenessMs;
+        if (fresh && !wasFresh) {
+            log.info("Реплика отстает на {} мс, чтение идет из реплики", (long) lagMs);
+        } else if (!fresh && wasFresh) {
+            log.warn("Чтение переключено на основную базу: {}",
+                    failure == null ? "реплика отстает на " + (long) lagMs + " мс" : failure);
+        } else if (failure != null && lastFailure == null) {
+            log.warn("Реплика недоступна, чтение идет из основной базы: {}", failure);
+        }
+        lastFailure = failure;
+    }
+
+    private void checkReplicated(long replicated) {
+        if (firstReplicated == Long.MIN_VALUE) {
+            firstReplicated = replicated;
+        } else if (replicated != firstReplicated) {
+            warnedNotReplicated = true;
+        } else if (lagMs > maxStalenessMs && !warnedNotReplicated) {
+            warnedNotReplicated = true;
+            log.warn("Метка времени в реплике не меняется с запуска: реплика не получает изменений основной базы, " +
+                    "нужна внешняя репликация или filmorate.datasource.replica.snapshot.enabled=true");
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package ru.yandex.practicum.filmorate.datasource;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.flywaydb.core.Flyway;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Встроенная репликация для реплики, которую не поддерживает внешняя репликация, например
+ * второй базы H2. Схема реплики создается при старте теми же миграциями Flyway, а затем раз
+ * в snapshot.interval-ms таблицы основной базы читаются одним снимком (SERIALIZABLE) и
+ * переписываются в реплику одной транзакцией: читатели реплики видят либо прежний снимок,
+ * либо новый целиком. В REPLICATION_HEARTBEAT реплики пишется время перед чтением снимка,
+ * по нему ReplicaLagMonitor считает отставание так же, как при внешней репликации.
+ * Каждый цикл копирует базу целиком, поэтому подходит для небольших баз; если реплику
+ * поддерживает внешняя репликация, копирование отключается свойством
+ * filmorate.datasource.replica.snapshot.enabled=false.
+ */
+@Component
+@ConditionalOnExpression("'${filmorate.datasource.replica.url:}' != '' " +
+        "&& ${filmorate.datasource.replica.snapshot.enabled:true}")
+public class SnapshotReplicator {
+    // порядок вставки учитывает внешние ключи, удаление идет в обратном порядке
+    private static final List<String> TABLES = List.of(
+            "USERS", "MPA", "GENRE", "FILMS", "FRIENDS", "FILM_GENRE", "FILM_LIKES");
+    private static final int BATCH_SIZE = 1000;
+
+    private final Logger log = LoggerFactory.getLogger(SnapshotReplicator.class);
+
+    private final HikariDataSource primary;
+    private final HikariDataSource replica;
+    private final Timer copyTimer;
+    private String lastFailure;
+
+    @Autowired
+    public SnapshotReplicator(@Qualifier("primaryDataSource") HikariDataSource primary,
+                              @Qualifier("replicaDataSource") HikariDataSource replica,
+                              MeterRegistry registry) {
+        this.primary = primary;
+        this.replica = replica;
+        this.copyTimer = Timer.builder("filmorate.datasource.replica.snapshot")
+                .description("Время копирования снимка основной базы в реплику")
+                .register(registry);
+    }
+
+    // до первого снимка данные реплики считаются сколь угодно старыми, иначе метка из миграции
+    // сделала бы свежей пустую реплику
+    @PostConstruct
+    public void migrateReplica() {
+        Flyway.configure().dataSource(replica).load().migrate();
+        new JdbcTemplate(replica).update("UPDATE REPLICATION_HEARTBEAT SET UPDATED_AT = ? WHERE ID = 1",
+                new Timestamp(0));
+    }
+
+    /**
+     * Переписывает в реплику текущий снимок основной базы
+     */
+    @Scheduled(initialDelayString = "${filmorate.datasource.replica.snapshot.interval-ms:500}",
+            fixedDelayString = "${filmorate.datasource.replica.snapshot.interval-ms:500}")
+    public void copy() {
+        long started = System.nanoTime();
+        try (Connection source = primary.getConnection(); Connection target = replica.getConnection()) {
+            source.setTransactionIsolation(Connection.TRANSACTION_SERIALIZABLE);
+            source.setReadOnly(true);
+            source.setAutoCommit(false);
+            target.setAutoCommit(false);
+            try {
+                // все, что зафиксировано в основной базе до этого момента, попадет в снимок
+                Timestamp snapshotAt = new Timestamp(System.currentTimeMillis());
+                int rows = copyTables(source, target);
+                try (PreparedStatement heartbeat = target.prepareStatement(
+                        "UPDATE REPLICATION_HEARTBEAT SET UPDATED_AT = ? WHERE ID = 1")) {
+                    heartbeat.setTimestamp(1, snapshotAt);
+                    heartbeat.executeUpdate();
+                }
+                target.commit();
+                log.debug("В реплику скопировано строк: {}", rows);
+            } catch (SQLException | RuntimeException e) {
+                target.rollback();
+                throw e;
+            } finally {
+                source.rollback();
+            }
+            if (lastFailure != null) {
+                log.info("Копирование в реплику восстановлено");
+            }
+            lastFailure = null;
+        } catch (SQLException e) {
+            // реплика без новых снимков отстает, и ReplicaLagMonitor переводит чтение на основную базу
+            if (lastFailure == null) {
+                log.warn("Снимок основной базы не скопирован в реплику: {}", e.getMessage());
+            }
+            lastFailure = e.getMessage();
+        } finally {
+            copyTimer.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private static int copyTables(Connection source, Connection target) throws SQLException {
+        try (Statement delete = target.createStatement()) {
+            for (int i = TABLES.size() - 1; i >= 0; i--) {
+                delete.executeUpdate("DELETE FROM " + TABLES.get(i));
+            }
+        }
+        int rows = 0;
+        for (String table : TABLES) {
+            rows += copyTable(source, target, table);
+        }
+        return rows;
+    }
+
+    private static int copyTable(Connection source, Connection target, String table) throws SQLException {
+        try (Statement select = source.createStatement();
+             ResultSet rs = select.executeQuery("SELECT * FROM " + table)) {
+            ResultSetMetaData meta = rs.getMetaData();
+            int columns = meta.getColumnCount();
+            StringBuilder names = new StringBuilder();
+            StringBuilder values = new StringBuilder();
+            for (int i = 1; i <= columns; i++) {
+                names.append(i > 1 ? ", " : "").append(meta.getColumnName(i));
+                values.append(i > 1 ? ", ?" : "?");
+            }
+            int rows = 0;
+            try (PreparedStatement insert = target.prepareStatement(
+                    "INSERT INTO " + table + " (" + names + ") VALUES (" + values + ")")) {
+                while (rs.next()) {
+                    for (int i = 1; i <= columns; i++) {
+                        insert.setObject(i, rs.getObject(i));
+                    }
+                    insert.addBatch();
+                    if (++rows % BATCH_SIZE == 0) {
+                        insert.executeBatch();
+                    }
+                }
+                insert.executeBatch();
+            }
+            return rows;
+        }
+    }
+}
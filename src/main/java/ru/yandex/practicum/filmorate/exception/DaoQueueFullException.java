@@ -0,0 +1,7 @@
+package ru.yandex.practicum.filmorate.exception;
+
+public class DaoQueueFullException extends RuntimeException {
+    public DaoQueueFullException(String message) {
+        super(message);
+    }
+}
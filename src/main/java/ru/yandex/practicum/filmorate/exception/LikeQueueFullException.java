@@ -0,0 +1,7 @@
+package ru.yandex.practicum.filmorate.exception;
+
+public class LikeQueueFullException extends RuntimeException {
+    public LikeQueueFullException(String message) {
+        super(message);
+    }
+}
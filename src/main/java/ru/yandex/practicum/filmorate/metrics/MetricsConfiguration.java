@@ -0,0 +1,54 @@
+package ru.yandex.practicum.filmorate.metrics;
+
+import io.micrometer.core.aop.TimedAspect;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.jdbc.JdbcProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import javax.sql.DataSource;
+
+/**
+ * Метрики приложения. Задержки HTTP-запросов Spring Boot пишет сам в http.server.requests,
+ * здесь подключаются таймеры методов хранилищ (@Timed) и подсчет SQL-запросов.
+ */
+@Configuration
+public class MetricsConfiguration implements WebMvcConfigurer {
+    private final SqlStatementCounter counter;
+    private final MeterRegistry registry;
+
+    @Autowired
+    public MetricsConfiguration(SqlStatementCounter counter, MeterRegistry registry) {
+        this.counter = counter;
+        this.registry = registry;
+    }
+
+    @Bean
+    public TimedAspect timedAspect() {
+        return new TimedAspect(registry);
+    }
+
+    /**
+     * Заменяет JdbcTemplate из автоконфигурации, настройки spring.jdbc.template.* сохраняются.
+     */
+    @Bean
+    public JdbcTemplate jdbcTemplate(DataSource dataSource, JdbcProperties properties) {
+        JdbcTemplate jdbcTemplate = new StatementCountingJdbcTemplate(dataSource, counter);
+        JdbcProperties.Template template = properties.getTemplate();
+        jdbcTemplate.setFetchSize(template.getFetchSize());
+        jdbcTemplate.setMaxRows(template.getMaxRows());
+        if (template.getQueryTimeout() != null) {
+            jdbcTemplate.setQueryTimeout((int) template.getQueryTimeout().getSeconds());
+        }
+        return jdbcTemplate;
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry interceptors) {
+        interceptors.addInterceptor(new SqlStatementsInterceptor(counter, registry));
+    }
+}
@@ -0,0 +1,38 @@
+package ru.yandex.practicum.filmorate.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Счетчик SQL-запросов: общий в метрике filmorate.jdbc.statements
+ * и отдельный для текущего потока, чтобы посчитать запросы одного HTTP-запроса.
+ */
+@Component
+public class SqlStatementCounter {
+    private final ThreadLocal<int[]> current = ThreadLocal.withInitial(() -> new int[1]);
+    private final Counter total;
+
+    @Autowired
+    public SqlStatementCounter(MeterRegistry registry) {
+        this.total = Counter.builder("filmorate.jdbc.statements")
+                .description("Количество выполненных SQL-запросов")
+                .register(registry);
+    }
+
+    public void increment() {
+        current.get()[0]++;
+        total.increment();
+    }
+
+    /**
+     * Возвращает число запросов текущего потока с прошлого сброса и обнуляет его.
+     */
+    public int reset() {
+        int[] counter = current.get();
+        int count = counter[0];
+        counter[0] = 0;
+        return count;
+    }
+}
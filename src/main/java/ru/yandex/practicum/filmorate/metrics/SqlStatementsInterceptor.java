@@ -0,0 +1,51 @@
+package ru.yandex.practicum.filmorate.metrics;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Записывает в filmorate.http.sql.statements, сколько SQL-запросов выполнил обработчик
+ * одного HTTP-запроса. Рост значения для эндпоинта - признак запросов N+1.
+ */
+public class SqlStatementsInterceptor implements HandlerInterceptor {
+    /**
+     * Атрибут запроса с числом SQL-запросов, выполненных для него вне потока запроса
+     */
+    public static final String STATEMENTS_ATTRIBUTE = SqlStatementsInterceptor.class.getName() + ".statements";
+
+    private final SqlStatementCounter counter;
+    private final MeterRegistry registry;
+
+    public SqlStatementsInterceptor(SqlStatementCounter counter, MeterRegistry registry) {
+        this.counter = counter;
+        this.registry = registry;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        counter.reset();
+        return true;
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler,
+                                Exception ex) {
+        Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        DistributionSummary.builder("filmorate.http.sql.statements")
+                .description("Количество SQL-запросов на один HTTP-запрос")
+                .tag("method", request.getMethod())
+                .tag("uri", pattern == null ? "UNKNOWN" : pattern.toString())
+                .register(registry)
+                .record(counter.reset() + offThreadStatements(request));
+    }
+
+    private static int offThreadStatements(HttpServletRequest request) {
+        Object statements = request.getAttribute(STATEMENTS_ATTRIBUTE);
+        return statements instanceof Integer ? (Integer) statements : 0;
+    }
+}
@@ -0,0 +1,26 @@
+package ru.yandex.practicum.filmorate.metrics;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * JdbcTemplate, который считает созданные им Statement. applyStatementSettings вызывается
+ * для каждого запроса, пакетный batchUpdate считается одним запросом.
+ */
+public class StatementCountingJdbcTemplate extends JdbcTemplate {
+    private final SqlStatementCounter counter;
+
+    public StatementCountingJdbcTemplate(DataSource dataSource, SqlStatementCounter counter) {
+        super(dataSource);
+        this.counter = counter;
+    }
+
+    @Override
+    protected void applyStatementSettings(Statement stmt) throws SQLException {
+        counter.increment();
+        super.applyStatementSettings(stmt);
+    }
+}
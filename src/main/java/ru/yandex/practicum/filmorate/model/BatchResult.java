@@ -0,0 +1,25 @@
+package ru.yandex.practicum.filmorate.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Builder;
+import lombok.Data;
+
+/**
+ * Итог пакетной загрузки: счетчики и скорость. Результаты по отдельным элементам
+ * отдаются раньше, по мере сохранения порций (см. BatchItemResult).
+ * aborted - чтение остановилось на элементе abortedAt из-за испорченного потока данных,
+ * элементы до него обработаны, остальные не прочитаны.
+ */
+@Data
+@Builder
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class BatchResult {
+    private int total;
+    private int created;
+    private int failed;
+    private long elapsedMs;
+    private double itemsPerSecond;
+    private boolean aborted;
+    private Integer abortedAt;
+    private String abortError;
+}
@@ -0,0 +1,60 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Список фильмов, в котором названия рейтингов MPA и жанров передаются один раз
+ * в словарях mpa и genres, а у фильмов остаются только их id
+ */
+@Data
+@Builder
+public class NormalizedFilms {
+    private Map<Long, String> mpa;
+    private Map<Long, String> genres;
+    private List<NormalizedFilm> films;
+
+    /**
+     * @param films фильмы в порядке ответа
+     * @return те же фильмы в том же порядке со словарями рейтингов и жанров
+     */
+    public static NormalizedFilms of(Collection<Film> films) {
+        Map<Long, String> mpa = new TreeMap<>();
+        Map<Long, String> genres = new TreeMap<>();
+        List<NormalizedFilm> normalized = new ArrayList<>(films.size());
+        for (Film film : films) {
+            Long mpaId = null;
+            if (film.getMpa() != null) {
+                mpaId = film.getMpa().getId();
+                mpa.put(mpaId, film.getMpa().getName());
+            }
+            List<Long> genreIds = new ArrayList<>();
+            if (film.getGenres() != null) {
+                for (Genre genre : film.getGenres()) {
+                    genreIds.add(genre.getId());
+                    genres.put(genre.getId(), genre.getName());
+                }
+            }
+            normalized.add(NormalizedFilm.builder()
+                    .id(film.getId())
+                    .name(film.getName())
+                    .description(film.getDescription())
+                    .releaseDate(film.getReleaseDate())
+                    .duration(film.getDuration())
+                    .mpa(mpaId)
+                    .genres(genreIds)
+                    .build());
+        }
+        return NormalizedFilms.builder()
+                .mpa(mpa)
+                .genres(genres)
+                .films(normalized)
+                .build();
+    }
+}
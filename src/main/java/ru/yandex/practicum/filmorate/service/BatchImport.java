@@ -0,0 +1,144 @@
+package ru.yandex.practicum.filmorate.service;
+
+import lombok.extern.slf4j.Slf4j;
+import ru.yandex.practicum.filmorate.model.BatchItemResult;
+import ru.yandex.practicum.filmorate.model.BatchResult;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Пакетная загрузка: читает элементы по одному, проверяет каждый и сохраняет их порциями
+ * по chunkSize, чтобы весь запрос не держать в памяти. Если порция не сохранилась целиком,
+ * ее элементы сохраняются по одному, чтобы ошибка одного не отменяла остальные.
+ * Результат по каждому элементу (id или ошибка) отдается в results сразу после сохранения
+ * его порции, в порядке следования в запросе, поэтому в памяти держится не больше порции.
+ * Если поток данных испорчен и читать дальше нельзя, результат помечается прерванным
+ * с номером элемента, на котором остановилось чтение.
+ */
+@Slf4j
+final class BatchImport<T> {
+    private final int chunkSize;
+    private final Consumer<T> validation;
+    private final Function<List<T>, List<Long>> createChunk;
+    private final Function<T, Long> createOne;
+    private final Consumer<BatchItemResult> results;
+
+    // результаты элементов текущей порции в порядке чтения; у сохраняемых id заполняется при сохранении
+    private final List<BatchItemResult> pending = new ArrayList<>();
+    private final List<T> chunk = new ArrayList<>();
+    private final List<BatchItemResult> chunkResults = new ArrayList<>();
+    private int created;
+    private String abortError;
+
+    BatchImport(int chunkSize,
+                Consumer<T> validation,
+                Function<List<T>, List<Long>> createChunk,
+                Function<T, Long> createOne,
+                Consumer<BatchItemResult> results) {
+        this.chunkSize = chunkSize;
+        this.validation = validation;
+        this.createChunk = createChunk;
+        this.createOne = createOne;
+        this.results = results;
+    }
+
+    BatchResult run(Iterator<T> items) {
+        long started = System.nanoTime();
+        int index = 0;
+        while (hasNext(items, index)) {
+            T item;
+            try {
+                item = items.next();
+            } catch (RuntimeException e) {
+                // элемент не разобрался, переходим к следующему
+                pending.add(failed(index++, e));
+                flushIfFull();
+                continue;
+            }
+            BatchItemResult result = BatchItemResult.builder().index(index++).build();
+            pending.add(result);
+            try {
+                validation.accept(item);
+                chunk.add(item);
+                chunkResults.add(result);
+            } catch (RuntimeException e) {
+                result.setError(message(e));
+            }
+            flushIfFull();
+        }
+        flush();
+        long elapsedMs = Math.max((System.nanoTime() - started) / 1_000_000, 1);
+        double itemsPerSecond = index * 1000.0 / elapsedMs;
+        log.info("Пакетная загрузка: всего {}, сохранено {}, за {} мс ({} в секунду)",
+                index, created, elapsedMs, Math.round(itemsPerSecond));
+        return BatchResult.builder()
+                .total(index)
+                .created(created)
+                .failed(index - created)
+                .elapsedMs(elapsedMs)
+                .itemsPerSecond(itemsPerSecond)
+                .aborted(abortError != null)
+                .abortedAt(abortError == null ? null : index)
+                .abortError(abortError)
+                .build();
+    }
+
+    private boolean hasNext(Iterator<T> items, int index) {
+        try {
+            return items.hasNext();
+        } catch (RuntimeException e) {
+            // поток данных испорчен, дальше читать нельзя
+            log.warn("Пакетная загрузка прервана на элементе {}: {}", index, e.getMessage());
+            abortError = message(e);
+            return false;
+        }
+    }
+
+    private void flushIfFull() {
+        if (pending.size() == chunkSize) {
+            flush();
+        }
+    }
+
+    private void flush() {
+        if (!chunk.isEmpty()) {
+            save();
+        }
+        pending.forEach(results);
+        pending.clear();
+        chunk.clear();
+        chunkResults.clear();
+    }
+
+    private void save() {
+        try {
+            List<Long> ids = createChunk.apply(chunk);
+            for (int i = 0; i < ids.size(); i++) {
+                chunkResults.get(i).setId(ids.get(i));
+            }
+            created += ids.size();
+        } catch (RuntimeException e) {
+            log.warn("Порция из {} элементов не сохранилась, сохраняем по одному", chunk.size());
+            for (int i = 0; i < chunk.size(); i++) {
+                try {
+                    chunkResults.get(i).setId(createOne.apply(chunk.get(i)));
+                    created++;
+                } catch (RuntimeException itemError) {
+                    chunkResults.get(i).setError(message(itemError));
+                }
+            }
+        }
+    }
+
+    private static BatchItemResult failed(int index, RuntimeException e) {
+        return BatchItemResult.builder().index(index).error(message(e)).build();
+    }
+
+    private static String message(RuntimeException e) {
+        return e.getMessage() == null ? "некорректные данные" : e.getMessage();
+    }
+}
@@ -1,23 +1,41 @@
 package ru.yandex.practicum.filmorate.service;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import ru.yandex.practicum.filmorate.model.BatchItemResult;
+import ru.yandex.practicum.filmorate.model.BatchResult;
 import ru.yandex.practicum.filmorate.model.Film;
 import ru.yandex.practicum.filmorate.dao.FilmStorage;
 import ru.yandex.practicum.filmorate.dao.UserStorage;
+import ru.yandex.practicum.filmorate.dao.index.TrendingIndex;
+import ru.yandex.practicum.filmorate.exception.FilmNotFoundException;
+import ru.yandex.practicum.filmorate.exception.ValidationException;
+import ru.yandex.practicum.filmorate.utilites.Validation;
 
+import java.time.Duration;
 import java.util.Collection;
+import java.util.Iterator;
 import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+import static ru.yandex.practicum.filmorate.utilites.Validation.checkUserExists;
+import static ru.yandex.practicum.filmorate.utilites.Validation.validationPage;
 
 @Service
 public class FilmService {
     private final FilmStorage filmStorage;
     private final UserStorage userStorage;
+    private final int batchChunkSize;
 
     @Autowired
-    public FilmService(FilmStorage filmStorage, UserStorage userStorage) {
+    public FilmService(FilmStorage filmStorage,
+                       UserStorage userStorage,
+                       @Value("${filmorate.batch.chunk-size:1000}") int batchChunkSize) {
         this.filmStorage = filmStorage;
         this.userStorage = userStorage;
+        this.batchChunkSize = batchChunkSize;
     }
 
     /**
@@ -31,6 +49,18 @@ public class FilmService {
         return filmStorage.findFilmById(id);
     }
 
+    /**
+     * Версия фильма для ETag, сам фильм не загружается
+     *
+     * @param id id фильма
+     * @return версия, которая меняется при изменении фильма и его лайков
+     */
+
+    public long findFilmVersion(Long id) {
+        return filmStorage.findFilmVersion(id)
+                .orElseThrow(() -> new FilmNotFoundException("Фильма с таким Id нет"));
+    }
+
     /**
      * Принимает из тела запроса фильм и добавляет его
      *
@@ -42,6 +72,23 @@ public class FilmService {
         return filmStorage.create(film);
     }
 
+    /**
+     * Добавляет фильмы по мере чтения из запроса, сохраняя их порциями
+     *
+     * @param films фильмы в порядке следования в запросе
+     * @param results получатель результата по каждому элементу, вызывается по мере сохранения порций
+     * @return счетчики и скорость загрузки
+     */
+
+    public BatchResult createAll(Iterator<Film> films, Consumer<BatchItemResult> results) {
+        return new BatchImport<Film>(batchChunkSize,
+                Validation::validationFilm,
+                chunk -> filmStorage.createAll(chunk).stream().map(Film::getId).collect(Collectors.toList()),
+                film -> filmStorage.create(film).getId(),
+                results)
+                .run(films);
+    }
+
     /**
      * Принимает из тела запроса фильм и обновляет его
      *
@@ -63,6 +110,29 @@ public class FilmService {
         return filmStorage.findAll();
     }
 
+    /**
+     * Вывод страницы фильмов, отсортированных по id
+     *
+     * @param afterId id последнего фильма предыдущей страницы, для первой страницы null
+     * @param limit   размер страницы
+     * @return фильмы с id больше afterId
+     */
+
+    public Collection<Film> findAll(Long afterId, int limit) {
+        validationPage(limit);
+        return filmStorage.findAll(afterId == null ? 0 : afterId, limit);
+    }
+
+    /**
+     * Передает все фильмы по одному по мере чтения из базы, не собирая их в список
+     *
+     * @param consumer получатель фильмов
+     */
+
+    public void streamAll(Consumer<Film> consumer) {
+        filmStorage.streamAll(consumer);
+    }
+
     /**
      * Добавляет лайк фильму
      *
@@ -90,12 +160,94 @@ public class FilmService {
     /**
      * Вывод фильмов по популярности
      *
-     * @param count количество фильмов которые надо вывести
+     * @param count   количество фильмов которые надо вывести
+     * @param genreId id жанра, null - любой
+     * @param year    год выхода, null - любой
      * @return список фильмов
      */
 
-    public Collection<Film> getFilmQuantityLike(int count) {
-        return filmStorage.getFilmQuantityLike(count);
+    public Collection<Film> getFilmQuantityLike(int count, Long genreId, Integer year) {
+        validationPage(count);
+        return filmStorage.getFilmQuantityLike(count, genreId, year);
+    }
+
+    /**
+     * Общая версия рейтинга популярности для ETag списка популярных фильмов
+     *
+     * @return версия, которая меняется при любом лайке и изменении фильма
+     */
+
+    public long getPopularVersion() {
+        return filmStorage.getPopularVersion();
+    }
+
+    /**
+     * Рекомендации фильмов по лайкам пользователей с похожими вкусами
+     *
+     * @param userId id пользователя
+     * @param limit  сколько фильмов вернуть
+     * @return фильмы, которые пользователь еще не лайкал
+     */
+    public Collection<Film> recommendations(Long userId, int limit) {
+        validationPage(limit);
+        checkUserExists(userStorage.findUserById(userId));
+        return filmStorage.recommendations(userId, limit);
+    }
+
+    /**
+     * Поиск фильмов по словам в названии и/или описании
+     *
+     * @param query строка запроса
+     * @param by    где искать: title, description или оба через запятую
+     * @param limit сколько фильмов вернуть
+     * @return найденные фильмы от наиболее подходящего
+     */
+    public Collection<Film> search(String query, String by, int limit) {
+        validationPage(limit);
+        if (query == null || query.isBlank()) {
+            throw new ValidationException("строка поиска не может быть пустой");
+        }
+        boolean byTitle = false;
+        boolean byDescription = false;
+        for (String field : by.split(",")) {
+            switch (field.trim()) {
+                case "title":
+                    byTitle = true;
+                    break;
+                case "description":
+                    byDescription = true;
+                    break;
+                default:
+                    throw new ValidationException("искать можно только по title и description");
+            }
+        }
+        return filmStorage.search(query, byTitle, byDescription, limit);
+    }
+
+    /**
+     * Фильмы с наибольшим числом лайков за последний час, сутки или неделю
+     *
+     * @param window окно: 1h, 24h или 7d
+     * @param count  сколько фильмов вернуть
+     * @return фильмы от самого популярного за окно
+     */
+    public Collection<Film> trending(String window, int count) {
+        validationPage(count);
+        Duration duration;
+        switch (window) {
+            case "1h":
+                duration = TrendingIndex.HOUR;
+                break;
+            case "24h":
+                duration = TrendingIndex.DAY;
+                break;
+            case "7d":
+                duration = TrendingIndex.WEEK;
+                break;
+            default:
+                throw new ValidationException("окно должно быть 1h, 24h или 7d");
+        }
+        return filmStorage.getTrending(duration, count);
     }
 
 }
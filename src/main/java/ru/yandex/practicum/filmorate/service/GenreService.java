@@ -28,4 +28,8 @@ public class GenreService {
     public Collection<Genre> findAll() {
         return genryStorage.findAll();
     }
+
+    public long getVersion() {
+        return genryStorage.getVersion();
+    }
 }
@@ -1,22 +1,34 @@
 package ru.yandex.practicum.filmorate.service;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import ru.yandex.practicum.filmorate.model.BatchItemResult;
+import ru.yandex.practicum.filmorate.model.BatchResult;
 import ru.yandex.practicum.filmorate.model.User;
 import ru.yandex.practicum.filmorate.dao.UserStorage;
+import ru.yandex.practicum.filmorate.exception.UserNotFoundException;
+import ru.yandex.practicum.filmorate.utilites.Validation;
 
 import java.util.Collection;
+import java.util.Iterator;
 import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 import static ru.yandex.practicum.filmorate.utilites.Validation.checkUserExists;
+import static ru.yandex.practicum.filmorate.utilites.Validation.validationPage;
 
 @Service
 public class UserService {
     private final UserStorage userStorage;
+    private final int batchChunkSize;
 
     @Autowired
-    public UserService(UserStorage userStorage) {
+    public UserService(UserStorage userStorage,
+                       @Value("${filmorate.batch.chunk-size:1000}") int batchChunkSize) {
         this.userStorage = userStorage;
+        this.batchChunkSize = batchChunkSize;
     }
 
     /**
@@ -29,6 +41,22 @@ public class UserService {
         return userStorage.create(user);
     }
 
+    /**
+     * Создает пользователей по мере чтения из запроса, сохраняя их порциями
+     *
+     * @param users пользователи в порядке следования в запросе
+     * @param results получатель результата по каждому элементу, вызывается по мере сохранения порций
+     * @return счетчики и скорость загрузки
+     */
+    public BatchResult createAll(Iterator<User> users, Consumer<BatchItemResult> results) {
+        return new BatchImport<User>(batchChunkSize,
+                Validation::validationUser,
+                chunk -> userStorage.createAll(chunk).stream().map(User::getId).collect(Collectors.toList()),
+                user -> userStorage.create(user).getId(),
+                results)
+                .run(users);
+    }
+
     /**
      * Обновляет пользователя
      *
@@ -48,6 +76,27 @@ public class UserService {
         return userStorage.findAll();
     }
 
+    /**
+     * Страница пользователей, отсортированных по id
+     *
+     * @param afterId id последнего пользователя предыдущей страницы, для первой страницы null
+     * @param limit   размер страницы
+     * @return пользователи с id больше afterId
+     */
+    public Collection<User> findAll(Long afterId, int limit) {
+        validationPage(limit);
+        return userStorage.findAll(afterId == null ? 0 : afterId, limit);
+    }
+
+    /**
+     * Передает всех пользователей по одному по мере чтения из базы
+     *
+     * @param consumer получатель пользователей
+     */
+    public void streamAll(Consumer<User> consumer) {
+        userStorage.streamAll(consumer);
+    }
+
     /**
      * Возвращает пользователя по id
      *
@@ -57,7 +106,18 @@ public class UserService {
     public User findUserById(Long id) {
         Optional<User> user = userStorage.findUserById(id);
         checkUserExists(user);
-        return userStorage.findUserById(id).get();
+        return user.get();
+    }
+
+    /**
+     * Версия пользователя для ETag, сам пользователь не загружается
+     *
+     * @param id id пользователя
+     * @return версия, которая меняется при обновлении пользователя
+     */
+    public long findUserVersion(Long id) {
+        return userStorage.findUserVersion(id)
+                .orElseThrow(() -> new UserNotFoundException("Пользователя с таким ID нет"));
     }
 
     /**
@@ -106,4 +166,17 @@ public class UserService {
     public Collection<User> getFriends(Long id) {
         return userStorage.getFriends(id);
     }
+
+    /**
+     * Рекомендации друзей: друзья друзей по убыванию количества общих друзей
+     *
+     * @param id    id пользователя
+     * @param limit сколько пользователей вернуть
+     * @return рекомендованные пользователи
+     */
+    public Collection<User> recommendations(Long id, int limit) {
+        validationPage(limit);
+        checkUserExists(userStorage.findUserById(id));
+        return userStorage.recommendations(id, limit);
+    }
 }
@@ -12,6 +12,7 @@ import java.util.Optional;
 
 @Slf4j
 public class Validation {
+    private static final int MAX_PAGE_SIZE = 10_000;
 
     public static void validationUser(User user) {
         if (user.getEmail() == null || user.getEmail().isBlank() || !user.getEmail().contains("@")) {
@@ -50,6 +51,13 @@ public class Validation {
         }
     }
 
+    public static void validationPage(int limit) {
+        if (limit <= 0 || limit > MAX_PAGE_SIZE) {
+            log.warn("Размер страницы {} вне допустимого диапазона", limit);
+            throw new ValidationException("размер страницы должен быть от 1 до " + MAX_PAGE_SIZE);
+        }
+    }
+
     public static void checkUserExists(Optional<User> user) {
         if (user.isEmpty()) {
             log.warn("Пользователь не найден в БД");
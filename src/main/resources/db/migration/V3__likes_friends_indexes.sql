@@ -0,0 +1,17 @@
+-- повторные лайки одной пары фильм-пользователь удаляются перед добавлением UNIQUE
+DELETE FROM film_likes fl
+WHERE EXISTS (SELECT 1 FROM film_likes d WHERE d.film_id = fl.film_id AND d.user_id = fl.user_id AND d.id < fl.id);
+
+UPDATE films f SET likes_count = (SELECT COUNT(*) FROM film_likes fl WHERE fl.film_id = f.id);
+
+-- проверка лайка и лайки фильма: индекс (film_id, user_id) покрывает оба запроса
+ALTER TABLE film_likes ADD CONSTRAINT IF NOT EXISTS film_likes_film_user_uq UNIQUE (film_id, user_id);
+
+-- лайки пользователя
+CREATE INDEX IF NOT EXISTS film_likes_user_film_idx ON film_likes (user_id, film_id);
+
+-- друзья пользователя и общие друзья используют UNIQUE(user_id, friend_id), обратное направление - этот индекс
+CREATE INDEX IF NOT EXISTS friends_friend_user_idx ON friends (friend_id, user_id);
+
+-- фильмы жанра, UNIQUE(film_id, genre_id) покрывает жанры фильма
+CREATE INDEX IF NOT EXISTS film_genre_genre_film_idx ON film_genre (genre_id, film_id);
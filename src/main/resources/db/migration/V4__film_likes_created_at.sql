@@ -0,0 +1,6 @@
+-- время старых лайков неизвестно, они остаются с NULL и в окна трендов не попадают
+ALTER TABLE film_likes ADD COLUMN IF NOT EXISTS created_at timestamp;
+
+ALTER TABLE film_likes ALTER COLUMN created_at SET DEFAULT CURRENT_TIMESTAMP;
+
+CREATE INDEX IF NOT EXISTS film_likes_created_at_idx ON film_likes (created_at);
@@ -0,0 +1,7 @@
+-- метка времени, которую основная база обновляет, а реплика отдает: по ее возрасту видно отставание реплики
+CREATE TABLE IF NOT EXISTS replication_heartbeat (
+    id         int PRIMARY KEY,
+    updated_at timestamp NOT NULL
+);
+
+INSERT INTO replication_heartbeat (id, updated_at) VALUES (1, CURRENT_TIMESTAMP) ON CONFLICT DO NOTHING;
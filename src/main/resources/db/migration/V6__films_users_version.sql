@@ -0,0 +1,8 @@
+-- версия строки для слабых ETag: растет при каждом изменении фильма, его лайков или пользователя.
+-- Начинается от времени создания строки в миллисекундах, сдвинутого на 20 бит, как в хранилищах
+-- в памяти: после пересоздания базы строка с тем же id получает другой ETag, и клиент не получит
+-- 304 на чужие данные. Уже существующие строки получают время выполнения миграции.
+ALTER TABLE films ADD COLUMN IF NOT EXISTS version bigint
+    DEFAULT CAST(EXTRACT(EPOCH FROM CURRENT_TIMESTAMP) * 1000 AS bigint) * 1048576 NOT NULL;
+ALTER TABLE users ADD COLUMN IF NOT EXISTS version bigint
+    DEFAULT CAST(EXTRACT(EPOCH FROM CURRENT_TIMESTAMP) * 1000 AS bigint) * 1048576 NOT NULL;
@@ -0,0 +1,43 @@
+package ru.yandex.practicum.filmorate.dao;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.User;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest(properties = "spring.datasource.url=jdbc:h2:mem:db-contract;MODE=PostgreSQL;DB_CLOSE_DELAY=-1")
+class DbStorageContractTest extends StorageContractTest {
+    @Autowired
+    private FilmStorage filmStorage;
+    @Autowired
+    private UserStorage userStorage;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Test
+    void rolledBackWritesDoNotReachIndexes() {
+        User user = userStorage.create(user("r1"));
+        Film first = filmStorage.create(film("Первый", 1963, null, null));
+        Film second = filmStorage.create(film("Второй", 1963, null, null));
+
+        transactionTemplate.executeWithoutResult(status -> {
+            filmStorage.addLike(second.getId(), user.getId());
+            first.setName("Откаченный");
+            filmStorage.update(first);
+            status.setRollbackOnly();
+        });
+
+        assertEquals(List.of(first.getId(), second.getId()), filmStorage.getFilmQuantityLike(10, null, 1963).stream()
+                .map(Film::getId)
+                .collect(Collectors.toList()));
+        assertTrue(filmStorage.search("откаченный", true, false, 10).isEmpty());
+    }
+}
@@ -0,0 +1,9 @@
+package ru.yandex.practicum.filmorate.dao;
+
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+@SpringBootTest(properties = "spring.datasource.url=jdbc:h2:mem:inmemory-contract;MODE=PostgreSQL;DB_CLOSE_DELAY=-1")
+@ActiveProfiles("inmemory")
+class InMemoryStorageContractTest extends StorageContractTest {
+}
@@ -0,0 +1,236 @@
+package ru.yandex.practicum.filmorate.dao;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import ru.yandex.practicum.filmorate.exception.FilmNotFoundException;
+import ru.yandex.practicum.filmorate.exception.UserNotFoundException;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.MPA;
+import ru.yandex.practicum.filmorate.model.User;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Общие проверки поведения хранилищ фильмов и пользователей: каждый движок хранения
+ * запускает их в своем контексте. Тесты не рассчитывают на пустую базу и друг на друга,
+ * у каждого свои пользователи, фильмы и год выхода.
+ */
+abstract class StorageContractTest {
+    @Autowired
+    private FilmStorage filmStorage;
+    @Autowired
+    private UserStorage userStorage;
+
+    @Test
+    void createdUserIsFoundAndNameDefaultsToLogin() {
+        User created = userStorage.create(new User(null, "a@mail.ru", "alogin", "", LocalDate.of(1990, 1, 1)));
+
+        assertNotNull(created.getId());
+        User found = userStorage.findUserById(created.getId()).orElseThrow();
+        assertEquals("alogin", found.getName());
+        assertEquals(LocalDate.of(1990, 1, 1), found.getBirthday());
+        assertTrue(userStorage.findUserById(Long.MAX_VALUE / 2).isEmpty());
+    }
+
+    @Test
+    void updateOfUnknownUserFails() {
+        User user = new User(Long.MAX_VALUE / 2, "b@mail.ru", "blogin", "b", LocalDate.of(1990, 1, 1));
+
+        assertThrows(UserNotFoundException.class, () -> userStorage.update(user));
+    }
+
+    @Test
+    void usersArePagedByIdAfterGivenId() {
+        List<User> created = userStorage.createAll(List.of(user("p1"), user("p2"), user("p3")));
+
+        List<Long> page = userStorage.findAll(created.get(0).getId(), 2).stream()
+                .map(User::getId)
+                .collect(Collectors.toList());
+        assertEquals(List.of(created.get(1).getId(), created.get(2).getId()), page);
+    }
+
+    @Test
+    void friendRequestConfirmAndDelete() {
+        User user = userStorage.create(user("f1"));
+        User friend = userStorage.create(user("f2"));
+
+        userStorage.requestToFriend(user.getId(), friend.getId());
+        assertEquals(List.of(friend.getId()), ids(userStorage.getFriends(user.getId())));
+        assertTrue(userStorage.getFriends(friend.getId()).isEmpty());
+
+        userStorage.confirmFriend(friend.getId(), user.getId());
+        assertThrows(UserNotFoundException.class, () -> userStorage.confirmFriend(friend.getId(), user.getId()));
+
+        userStorage.deleteFriend(user.getId(), friend.getId());
+        assertTrue(userStorage.getFriends(user.getId()).isEmpty());
+        assertThrows(UserNotFoundException.class, () -> userStorage.deleteFriend(user.getId(), friend.getId()));
+    }
+
+    @Test
+    void friendRequestToUnknownUserFails() {
+        User user = userStorage.create(user("u1"));
+
+        assertThrows(UserNotFoundException.class, () -> userStorage.requestToFriend(user.getId(), Long.MAX_VALUE / 2));
+    }
+
+    @Test
+    void commonFriendsAreIntersectionOfFriendLists() {
+        User first = userStorage.create(user("c1"));
+        User second = userStorage.create(user("c2"));
+        User common = userStorage.create(user("c3"));
+        User other = userStorage.create(user("c4"));
+        userStorage.requestToFriend(first.getId(), common.getId());
+        userStorage.requestToFriend(first.getId(), other.getId());
+        userStorage.requestToFriend(second.getId(), common.getId());
+
+        assertEquals(List.of(common.getId()), ids(userStorage.commonFriends(first.getId(), second.getId())));
+        assertTrue(userStorage.commonFriends(first.getId(), first.getId()).isEmpty());
+    }
+
+    @Test
+    void createdFilmHasResolvedMpaAndGenresSortedById() {
+        Film created = filmStorage.create(film("Фильм", 1950, new MPA(3L, null), genres(4L, 2L, 4L)));
+
+        Film found = filmStorage.findFilmById(created.getId()).orElseThrow();
+        assertEquals("PG-13", found.getMpa().getName());
+        assertEquals(List.of(2L, 4L), genreIds(found));
+        assertEquals("Драма", found.getGenres().iterator().next().getName());
+    }
+
+    @Test
+    void updateWithoutGenresKeepsThem() {
+        Film created = filmStorage.create(film("До", 1951, new MPA(1L, null), genres(1L)));
+        Film changed = film("После", 1952, new MPA(2L, null), null);
+        changed.setId(created.getId());
+
+        filmStorage.update(changed);
+
+        Film found = filmStorage.findFilmById(created.getId()).orElseThrow();
+        assertEquals("После", found.getName());
+        assertEquals("PG", found.getMpa().getName());
+        assertEquals(List.of(1L), genreIds(found));
+    }
+
+    @Test
+    void changingReturnedFilmDoesNotChangeStoredOne() {
+        Film created = filmStorage.create(film("Свой", 1954, null, genres(1L)));
+        Film found = filmStorage.findFilmById(created.getId()).orElseThrow();
+        found.setName("Чужой");
+        found.getGenres().clear();
+
+        Film again = filmStorage.findFilmById(created.getId()).orElseThrow();
+        assertEquals("Свой", again.getName());
+        assertEquals(List.of(1L), genreIds(again));
+    }
+
+    @Test
+    void unknownFilmIsNotFound() {
+        Film film = film("Нет", 1953, null, null);
+        film.setId(Long.MAX_VALUE / 2);
+
+        assertThrows(FilmNotFoundException.class, () -> filmStorage.findFilmById(Long.MAX_VALUE / 2));
+        assertThrows(FilmNotFoundException.class, () -> filmStorage.update(film));
+    }
+
+    @Test
+    void likesDefinePopularityAndAreCountedOnce() {
+        User first = userStorage.create(user("l1"));
+        User second = userStorage.create(user("l2"));
+        Film less = filmStorage.create(film("Меньше", 1960, null, null));
+        Film more = filmStorage.create(film("Больше", 1960, null, null));
+
+        filmStorage.addLike(more.getId(), first.getId());
+        filmStorage.addLike(more.getId(), first.getId());
+        filmStorage.addLike(more.getId(), second.getId());
+        filmStorage.addLike(less.getId(), first.getId());
+        assertEquals(List.of(more.getId(), less.getId()), ids(filmStorage.getFilmQuantityLike(10, null, 1960)));
+
+        filmStorage.deleteLike(more.getId(), first.getId());
+        filmStorage.deleteLike(more.getId(), second.getId());
+        assertEquals(List.of(less.getId(), more.getId()), ids(filmStorage.getFilmQuantityLike(10, null, 1960)));
+        assertThrows(UserNotFoundException.class, () -> filmStorage.deleteLike(more.getId(), first.getId()));
+    }
+
+    @Test
+    void likeByUnknownUserFails() {
+        Film film = filmStorage.create(film("Лайк", 1961, null, null));
+
+        assertThrows(UserNotFoundException.class, () -> filmStorage.addLike(film.getId(), Long.MAX_VALUE / 2));
+    }
+
+    @Test
+    void versionsChangeWithFilmLikesAndUser() {
+        User user = userStorage.create(user("v1"));
+        Film film = filmStorage.create(film("Версия", 1962, null, null));
+        long filmVersion = filmStorage.findFilmVersion(film.getId()).orElseThrow();
+        long popularVersion = filmStorage.getPopularVersion();
+        long userVersion = userStorage.findUserVersion(user.getId()).orElseThrow();
+
+        filmStorage.addLike(film.getId(), user.getId());
+        long liked = filmStorage.findFilmVersion(film.getId()).orElseThrow();
+        assertNotEquals(filmVersion, liked);
+        assertNotEquals(popularVersion, filmStorage.getPopularVersion());
+
+        film.setName("Новая версия");
+        filmStorage.update(film);
+        assertNotEquals(liked, filmStorage.findFilmVersion(film.getId()).orElseThrow());
+
+        user.setName("новое имя");
+        userStorage.update(user);
+        assertNotEquals(userVersion, userStorage.findUserVersion(user.getId()).orElseThrow());
+        assertTrue(userStorage.findUserVersion(Long.MAX_VALUE / 2).isEmpty());
+        assertTrue(filmStorage.findFilmVersion(Long.MAX_VALUE / 2).isEmpty());
+    }
+
+    @Test
+    void searchFindsFilmByTitleWord() {
+        Film film = filmStorage.create(film("Зазеркалье контракта", 1970, null, null));
+
+        assertEquals(List.of(film.getId()), ids(filmStorage.search("зазерк", true, false, 10)));
+    }
+
+    static User user(String login) {
+        return new User(null, login + "@mail.ru", login, login, LocalDate.of(1990, 1, 1));
+    }
+
+    static Film film(String name, int year, MPA mpa, Set<Genre> genres) {
+        return Film.builder()
+                .name(name)
+                .description("описание")
+                .releaseDate(LocalDate.of(year, 1, 1))
+                .duration(100)
+                .mpa(mpa)
+                .genres(genres)
+                .build();
+    }
+
+    private static Set<Genre> genres(Long... ids) {
+        Set<Genre> genres = new LinkedHashSet<>();
+        for (Long id : ids) {
+            genres.add(new Genre(id, null));
+        }
+        return genres;
+    }
+
+    private static List<Long> genreIds(Film film) {
+        List<Long> ids = new ArrayList<>();
+        film.getGenres().forEach(genre -> ids.add(genre.getId()));
+        return ids;
+    }
+
+    private static List<Long> ids(Iterable<?> items) {
+        List<Long> ids = new ArrayList<>();
+        for (Object item : items) {
+            ids.add(item instanceof Film ? ((Film) item).getId() : ((User) item).getId());
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,62 @@
+package ru.yandex.practicum.filmorate.dao.impl;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.yandex.practicum.filmorate.dao.index.LikeMatrix;
+import ru.yandex.practicum.filmorate.dao.index.PopularityIndex;
+import ru.yandex.practicum.filmorate.dao.index.TrendingIndex;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Пачка, в которой одно событие не записывается, повторяется, а затем пишется по одному:
+ * теряется только это событие, и оно учитывается в метрике.
+ */
+class LikeWriteBehindTest {
+    private static final long BROKEN_FILM = 2L;
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void failedBatchIsRetriedAndOnlyBrokenEventIsDropped() throws InterruptedException {
+        JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+        when(jdbcTemplate.batchUpdate(anyString(), anyList())).thenAnswer(invocation -> {
+            List<Object[]> rows = invocation.getArgument(1);
+            if (invocation.<String>getArgument(0).startsWith("insert")
+                    && rows.stream().anyMatch(row -> row[0].equals(BROKEN_FILM))) {
+                throw new DataIntegrityViolationException("нет такого фильма");
+            }
+            int[] updated = new int[rows.size()];
+            Arrays.fill(updated, 1);
+            return updated;
+        });
+        TransactionTemplate transactionTemplate = mock(TransactionTemplate.class);
+        when(transactionTemplate.execute(any()))
+                .thenAnswer(invocation -> invocation.<TransactionCallback<?>>getArgument(0).doInTransaction(null));
+        PopularityIndex popularityIndex = mock(PopularityIndex.class);
+        LikeMatrix likeMatrix = mock(LikeMatrix.class);
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        LikeWriteBehind writeBehind = new LikeWriteBehind(jdbcTemplate, transactionTemplate, popularityIndex,
+                likeMatrix, mock(TrendingIndex.class), 100, 100, 50, 100, true, 2, 1, registry);
+
+        writeBehind.start();
+        writeBehind.like(1L, 10L);
+        writeBehind.like(BROKEN_FILM, 10L);
+        writeBehind.stop();
+
+        verify(likeMatrix).add(10L, 1L);
+        verify(likeMatrix, never()).add(10L, BROKEN_FILM);
+        verify(popularityIndex).changeLikes(1L, 1L);
+        assertEquals(1.0, registry.get("filmorate.likes.write-behind.dropped").counter().count());
+        assertEquals(2.0, registry.get("filmorate.likes.write-behind.retries").counter().count());
+        assertTrue(writeBehind.pendingLike(BROKEN_FILM, 10L).isEmpty());
+    }
+}
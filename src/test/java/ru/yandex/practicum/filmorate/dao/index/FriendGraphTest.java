@@ -0,0 +1,56 @@
+package ru.yandex.practicum.filmorate.dao.index;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Граф друзей: повторная заявка, удаление отсутствующей связи и общие друзья.
+ */
+class FriendGraphTest {
+    private final FriendGraph graph = new FriendGraph(mock(JdbcTemplate.class));
+
+    @Test
+    void userWithoutFriendsHasEmptyArray() {
+        assertEquals(0, graph.friends(1).length);
+        assertEquals(0, graph.common(1, 2).length);
+    }
+
+    @Test
+    void duplicateAddKeepsOneLink() {
+        graph.add(1, 3);
+        graph.add(1, 2);
+        graph.add(1, 3);
+        assertArrayEquals(new long[]{2, 3}, graph.friends(1));
+        assertEquals(0, graph.friends(3).length);
+    }
+
+    @Test
+    void removeAbsentLinkChangesNothing() {
+        graph.add(1, 2);
+        long[] before = graph.friends(1);
+        graph.remove(1, 5);
+        graph.remove(7, 2);
+        assertSame(before, graph.friends(1));
+
+        graph.remove(1, 2);
+        assertEquals(0, graph.friends(1).length);
+        graph.remove(1, 2);
+        assertEquals(0, graph.friends(1).length);
+    }
+
+    @Test
+    void commonFriends() {
+        graph.add(1, 3);
+        graph.add(1, 4);
+        graph.add(1, 5);
+        graph.add(2, 4);
+        graph.add(2, 5);
+        graph.add(2, 6);
+        assertArrayEquals(new long[]{4, 5}, graph.common(1, 2));
+        assertArrayEquals(new long[]{4, 5}, graph.common(2, 1));
+        assertEquals(0, graph.common(1, 1).length);
+    }
+}
@@ -0,0 +1,101 @@
+package ru.yandex.practicum.filmorate.dao.index;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import ru.yandex.practicum.filmorate.exception.ValidationException;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Матрица лайков: повторный лайк, снятие отсутствующего лайка, id вне матрицы,
+ * порядок рекомендаций при равных очках и limit 0 или отрицательный.
+ */
+class LikeMatrixTest {
+    private final LikeMatrix matrix = new LikeMatrix(mock(JdbcTemplate.class), 20, 1);
+
+    @AfterEach
+    void shutdown() {
+        matrix.shutdown();
+    }
+
+    @Test
+    void userWithoutLikesGetsNothing() {
+        assertTrue(matrix.recommend(1, 10).isEmpty());
+        matrix.add(2, 1);
+        assertTrue(matrix.recommend(1, 10).isEmpty());
+        assertTrue(matrix.recommend(-1, 10).isEmpty());
+    }
+
+    @Test
+    void recommendationsAreRankedByOverlapThenFilmId() {
+        like(1, 1, 2);
+        like(2, 1, 2, 3);
+        like(3, 1, 5);
+        like(4, 1, 4);
+        like(5, 7);
+        assertEquals(List.of(3L, 4L, 5L), matrix.recommend(1, 10));
+        assertEquals(List.of(3L, 4L), matrix.recommend(1, 2));
+    }
+
+    @Test
+    void duplicateLikeIsCountedOnce() {
+        like(1, 1, 2);
+        like(2, 1, 2, 3);
+        like(3, 1, 4, 4, 4);
+        matrix.add(2, 3);
+        assertEquals(List.of(3L, 4L), matrix.recommend(1, 10));
+    }
+
+    @Test
+    void removeAbsentLikeChangesNothing() {
+        like(1, 1);
+        like(2, 1, 2);
+        matrix.remove(1, 2);
+        matrix.remove(3, 1);
+        matrix.remove(LikeMatrix.MAX_ID + 1, 1);
+        matrix.remove(1, -1);
+        assertEquals(List.of(2L), matrix.recommend(1, 10));
+
+        matrix.remove(2, 1);
+        assertTrue(matrix.recommend(1, 10).isEmpty());
+    }
+
+    @Test
+    void idsOutsideMatrixAreRejected() {
+        assertThrows(ValidationException.class, () -> matrix.add(LikeMatrix.MAX_ID + 1, 1));
+        assertThrows(ValidationException.class, () -> matrix.add(1, LikeMatrix.MAX_ID + 1));
+        assertThrows(ValidationException.class, () -> matrix.checkIds(-1, 1));
+        matrix.checkIds(LikeMatrix.MAX_ID, LikeMatrix.MAX_ID);
+        assertTrue(matrix.recommend(LikeMatrix.MAX_ID + 1, 10).isEmpty());
+    }
+
+    @Test
+    void zeroOrNegativeLimitReturnsEmpty() {
+        like(1, 1);
+        like(2, 1, 2);
+        assertTrue(matrix.recommend(1, 0).isEmpty());
+        assertTrue(matrix.recommend(1, -1).isEmpty());
+    }
+
+    @Test
+    void loadReplacesAllLikes() {
+        like(1, 1);
+        like(2, 1, 2);
+        matrix.load(consumer -> {
+            consumer.accept(1, 1, 0);
+            consumer.accept(1, 3, 0);
+            consumer.accept(5, 3, 0);
+        });
+        assertEquals(List.of(5L), matrix.recommend(1, 10));
+    }
+
+    private void like(long userId, long... filmIds) {
+        for (long filmId : filmIds) {
+            matrix.add(userId, filmId);
+        }
+    }
+}
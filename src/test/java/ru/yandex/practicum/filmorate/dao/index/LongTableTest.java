@@ -0,0 +1,78 @@
+package ru.yandex.practicum.filmorate.dao.index;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Таблица по id: границы страниц, замена записи, недопустимые id и обход с пропусками.
+ */
+class LongTableTest {
+
+    @Test
+    void getOutsideIssuedIdsReturnsNull() {
+        LongTable<String> table = new LongTable<>();
+        assertNull(table.get(0));
+        assertNull(table.get(-1));
+        assertNull(table.get(1));
+        assertEquals(1, table.nextId());
+        assertNull(table.get(1));
+        assertEquals(0, table.size());
+    }
+
+    @Test
+    void putAcrossPagesMovesIdCounter() {
+        LongTable<String> table = new LongTable<>();
+        table.put(1, "первый");
+        table.put(4095, "конец страницы");
+        table.put(4096, "начало страницы");
+        table.put(100_000, "далеко");
+
+        assertEquals("первый", table.get(1));
+        assertEquals("конец страницы", table.get(4095));
+        assertEquals("начало страницы", table.get(4096));
+        assertEquals("далеко", table.get(100_000));
+        assertNull(table.get(99_999));
+        assertEquals(4, table.size());
+        assertEquals(100_001, table.nextId());
+    }
+
+    @Test
+    void replacingRecordDoesNotChangeSize() {
+        LongTable<String> table = new LongTable<>();
+        table.put(3, "старая");
+        table.put(3, "новая");
+        assertEquals("новая", table.get(3));
+        assertEquals(1, table.size());
+    }
+
+    @Test
+    void invalidIdIsRejected() {
+        LongTable<String> table = new LongTable<>();
+        assertThrows(IllegalArgumentException.class, () -> table.put(0, "ноль"));
+        assertThrows(IllegalArgumentException.class, () -> table.put(-5, "минус"));
+        assertEquals(0, table.size());
+    }
+
+    @Test
+    void forEachAfterSkipsHolesAndStops() {
+        LongTable<Long> table = new LongTable<>();
+        for (long id : new long[]{1, 2, 5, 6, 9}) {
+            table.put(id, id);
+        }
+        List<Long> visited = new ArrayList<>();
+        table.forEachAfter(-10, visited::add);
+        assertEquals(List.of(1L, 2L, 5L, 6L, 9L), visited);
+
+        visited.clear();
+        table.forEachAfter(2, id -> visited.add(id) && visited.size() < 2);
+        assertEquals(List.of(5L, 6L), visited);
+
+        visited.clear();
+        table.forEachAfter(9, visited::add);
+        assertTrue(visited.isEmpty());
+    }
+}
@@ -0,0 +1,64 @@
+package ru.yandex.practicum.filmorate.dao.index;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Счетчик общих друзей: пропуск самого пользователя и его друзей, порядок при равенстве,
+ * рост таблицы и limit 0 или отрицательный.
+ */
+class MutualFriendsCounterTest {
+
+    @Test
+    void userAndHisFriendsAreNotCandidates() {
+        MutualFriendsCounter counter = new MutualFriendsCounter(1, new long[]{2, 3}, 4);
+        counter.add(1);
+        counter.add(2);
+        counter.add(3);
+        assertEquals(0, counter.top(10).length);
+
+        counter.add(4);
+        assertArrayEquals(new long[]{4}, counter.top(10));
+    }
+
+    @Test
+    void tiesAreOrderedBySmallerId() {
+        MutualFriendsCounter counter = new MutualFriendsCounter(1, SortedLongArrays.EMPTY, 0);
+        for (long candidate : new long[]{9, 7, 8, 5, 6}) {
+            counter.add(candidate);
+        }
+        counter.add(8);
+        counter.add(6);
+        assertArrayEquals(new long[]{6, 8, 5, 7, 9}, counter.top(5));
+        assertArrayEquals(new long[]{6, 8, 5}, counter.top(3));
+        assertArrayEquals(new long[]{6}, counter.top(1));
+    }
+
+    @Test
+    void zeroOrNegativeLimitReturnsEmpty() {
+        MutualFriendsCounter counter = new MutualFriendsCounter(1, SortedLongArrays.EMPTY, 1);
+        assertEquals(0, counter.top(3).length);
+        counter.add(2);
+        assertEquals(0, counter.top(0).length);
+        assertEquals(0, counter.top(-1).length);
+    }
+
+    @Test
+    void countsSurviveGrowth() {
+        MutualFriendsCounter counter = new MutualFriendsCounter(0, SortedLongArrays.EMPTY, -5);
+        for (long candidate = 1; candidate <= 1000; candidate++) {
+            for (int i = 0; i < candidate % 3; i++) {
+                counter.add(candidate);
+            }
+        }
+        counter.add(500);
+        counter.add(500);
+        long[] top = counter.top(1000);
+        assertEquals(667, top.length);
+        assertEquals(500, top[0]);
+        assertEquals(2, top[1]);
+        assertEquals(5, top[2]);
+        assertEquals(1000, top[top.length - 1]);
+    }
+}
@@ -0,0 +1,84 @@
+package ru.yandex.practicum.filmorate.dao.index;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Рейтинг популярности: порядок при равном числе лайков, фильтры по жанру и году,
+ * замена жанров и count 0 или отрицательный.
+ */
+class PopularityIndexTest {
+    private final PopularityIndex index = new PopularityIndex(mock(JdbcTemplate.class));
+
+    @Test
+    void emptyIndex() {
+        assertTrue(index.top(10).isEmpty());
+        assertTrue(index.top(10, 1L, 2000).isEmpty());
+        assertEquals(0, index.likes(1));
+    }
+
+    @Test
+    void tiesAreOrderedBySmallerId() {
+        index.put(3, 5, 2000, new long[0]);
+        index.put(1, 5, 2000, new long[0]);
+        index.put(2, 7, 2000, new long[0]);
+        index.put(4, 0, 2000, new long[0]);
+        assertEquals(List.of(2L, 1L, 3L, 4L), index.top(10));
+        assertEquals(List.of(2L, 1L), index.top(2));
+    }
+
+    @Test
+    void zeroOrNegativeCountReturnsEmpty() {
+        index.put(1, 1, 2000, new long[]{1});
+        assertTrue(index.top(0).isEmpty());
+        assertTrue(index.top(-1).isEmpty());
+        assertTrue(index.top(-1, 1L, 2000).isEmpty());
+    }
+
+    @Test
+    void filtersByGenreAndYear() {
+        index.put(1, 10, 1999, new long[]{2, 1});
+        index.put(2, 20, 2000, new long[]{1});
+        index.put(3, 30, 2000, new long[]{3});
+        index.put(4, 40, null, new long[]{1});
+
+        assertEquals(List.of(4L, 2L, 1L), index.top(10, 1L, null));
+        assertEquals(List.of(3L, 2L), index.top(10, null, 2000));
+        assertEquals(List.of(2L), index.top(10, 1L, 2000));
+        assertTrue(index.top(10, 5L, null).isEmpty());
+        assertTrue(index.top(10, null, 1800).isEmpty());
+    }
+
+    @Test
+    void putReplacesFilmInAllRankings() {
+        index.put(1, 3, 2000, new long[]{1});
+        index.put(1, 4, 2001, new long[]{2});
+        assertEquals(List.of(1L), index.top(10));
+        assertTrue(index.top(10, 1L, null).isEmpty());
+        assertTrue(index.top(10, null, 2000).isEmpty());
+        assertEquals(List.of(1L), index.top(10, 2L, 2001));
+        assertEquals(4, index.likes(1));
+    }
+
+    @Test
+    void likesChangeKeepsAttributes() {
+        index.put(1, 1, 2000, new long[]{1});
+        index.put(2, 2, 2000, new long[]{1});
+        index.changeLikes(1, 2);
+        index.changeLikes(2, 0);
+        assertEquals(List.of(1L, 2L), index.top(10, 1L, 2000));
+
+        index.updateAttributes(1, 2001, new long[0]);
+        assertEquals(3, index.likes(1));
+        assertEquals(List.of(2L), index.top(10, 1L, null));
+
+        index.changeLikes(5, 1);
+        assertEquals(1, index.likes(5));
+        assertEquals(List.of(1L, 2L, 5L), index.top(10));
+    }
+}
@@ -0,0 +1,73 @@
+package ru.yandex.practicum.filmorate.dao.index;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Поисковый индекс: точное слово выше начала слова, порядок при равных очках,
+ * переиндексация фильма и limit 0 или отрицательный.
+ */
+class SearchIndexTest {
+    private final PopularityIndex popularityIndex = new PopularityIndex(mock(JdbcTemplate.class));
+    private final SearchIndex index = new SearchIndex(mock(JdbcTemplate.class), popularityIndex);
+
+    @Test
+    void emptyIndexAndEmptyQuery() {
+        assertTrue(index.search("фильм", true, true, 10).isEmpty());
+        index.put(1, "Фильм", null);
+        assertTrue(index.search("", true, true, 10).isEmpty());
+        assertTrue(index.search(" ,.! ", true, true, 10).isEmpty());
+        assertTrue(index.search("фильм", false, false, 10).isEmpty());
+    }
+
+    @Test
+    void exactWordScoresAbovePrefix() {
+        index.put(1, "Котики и собаки", null);
+        index.put(2, "Кот", null);
+        assertEquals(List.of(2L, 1L), index.search("КОТ", true, false, 10));
+        assertEquals(List.of(1L), index.search("соб", true, false, 10));
+    }
+
+    @Test
+    void tiesAreOrderedByLikesThenId() {
+        index.put(3, "Ёлка", null);
+        index.put(1, "елка", null);
+        index.put(2, "Старая ёлка", null);
+        popularityIndex.put(2, 5, null, new long[0]);
+        assertEquals(List.of(2L, 1L, 3L), index.search("елка", true, false, 10));
+        assertEquals(List.of(2L, 1L), index.search("ёлка", true, false, 2));
+    }
+
+    @Test
+    void titleAndDescriptionAreSeparate() {
+        index.put(1, "Море", "про горы");
+        index.put(2, "Горы", "про море");
+        assertEquals(List.of(1L), index.search("море", true, false, 10));
+        assertEquals(List.of(2L), index.search("море", false, true, 10));
+        assertEquals(List.of(1L, 2L), index.search("море", true, true, 10));
+        // слово в названии и описании одного фильма считается один раз
+        index.put(3, "Море", "море");
+        assertEquals(List.of(1L, 2L, 3L), index.search("море", true, true, 10));
+    }
+
+    @Test
+    void putReplacesOldWords() {
+        index.put(1, "Старое название", "описание");
+        index.put(1, "Новое название", null);
+        assertTrue(index.search("старое", true, true, 10).isEmpty());
+        assertTrue(index.search("описание", true, true, 10).isEmpty());
+        assertEquals(List.of(1L), index.search("новое название", true, true, 10));
+    }
+
+    @Test
+    void zeroOrNegativeLimitReturnsEmpty() {
+        index.put(1, "Фильм", null);
+        assertTrue(index.search("фильм", true, true, 0).isEmpty());
+        assertTrue(index.search("фильм", true, true, -1).isEmpty());
+    }
+}
@@ -0,0 +1,50 @@
+package ru.yandex.practicum.filmorate.dao.index;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Операции над отсортированными массивами: пустые массивы, повторная вставка и удаление
+ * отсутствующего id не создают копий.
+ */
+class SortedLongArraysTest {
+
+    @Test
+    void insertKeepsOrderAndSkipsDuplicates() {
+        long[] ids = SortedLongArrays.insert(SortedLongArrays.EMPTY, 5);
+        ids = SortedLongArrays.insert(ids, 1);
+        ids = SortedLongArrays.insert(ids, 9);
+        ids = SortedLongArrays.insert(ids, 3);
+        assertArrayEquals(new long[]{1, 3, 5, 9}, ids);
+
+        assertSame(ids, SortedLongArrays.insert(ids, 5));
+        assertEquals(0, SortedLongArrays.EMPTY.length);
+    }
+
+    @Test
+    void removeAbsentReturnsSameArray() {
+        long[] ids = {1, 3, 5};
+        assertSame(ids, SortedLongArrays.remove(ids, 4));
+        assertSame(SortedLongArrays.EMPTY, SortedLongArrays.remove(SortedLongArrays.EMPTY, 1));
+        assertArrayEquals(new long[]{1, 5}, SortedLongArrays.remove(ids, 3));
+        assertArrayEquals(new long[]{1, 3, 5}, ids);
+    }
+
+    @Test
+    void removeLastReturnsEmpty() {
+        assertSame(SortedLongArrays.EMPTY, SortedLongArrays.remove(new long[]{7}, 7));
+    }
+
+    @Test
+    void containsAndIntersect() {
+        long[] first = {1, 2, 4, 8, 16};
+        long[] second = {2, 3, 4, 16, 17};
+        assertTrue(SortedLongArrays.contains(first, 8));
+        assertFalse(SortedLongArrays.contains(first, 3));
+        assertFalse(SortedLongArrays.contains(SortedLongArrays.EMPTY, 3));
+        assertArrayEquals(new long[]{2, 4, 16}, SortedLongArrays.intersect(first, second));
+        assertArrayEquals(new long[0], SortedLongArrays.intersect(first, SortedLongArrays.EMPTY));
+        assertArrayEquals(new long[0], SortedLongArrays.intersect(new long[]{1, 3}, new long[]{2, 4}));
+    }
+}
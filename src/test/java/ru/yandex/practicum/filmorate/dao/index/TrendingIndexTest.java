@@ -0,0 +1,128 @@
+package ru.yandex.practicum.filmorate.dao.index;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Окна трендов на подмененных часах: выход лайка из окна, снятие лайка,
+ * порядок при равенстве и count 0 или отрицательный.
+ */
+class TrendingIndexTest {
+    private static final long START = Duration.ofDays(20_000).toMillis();
+
+    private final AtomicLong now = new AtomicLong(START);
+    private final TrendingIndex index = new TrendingIndex(mock(JdbcTemplate.class), now::get);
+
+    @Test
+    void likeLeavesWindowsOneByOne() {
+        index.like(1, START);
+        assertEquals(List.of(1L), top(TrendingIndex.HOUR));
+
+        later(Duration.ofMinutes(59));
+        assertEquals(List.of(1L), top(TrendingIndex.HOUR));
+        later(Duration.ofMinutes(1));
+        assertTrue(top(TrendingIndex.HOUR).isEmpty());
+        assertEquals(List.of(1L), top(TrendingIndex.DAY));
+
+        later(Duration.ofHours(23));
+        assertTrue(top(TrendingIndex.DAY).isEmpty());
+        assertEquals(List.of(1L), top(TrendingIndex.WEEK));
+
+        later(Duration.ofDays(6));
+        assertTrue(top(TrendingIndex.WEEK).isEmpty());
+    }
+
+    @Test
+    void oldLikeCountsOnlyInLongerWindows() {
+        index.like(1, START - Duration.ofHours(2).toMillis());
+        index.like(2, START - Duration.ofDays(8).toMillis());
+        assertTrue(top(TrendingIndex.HOUR).isEmpty());
+        assertEquals(List.of(1L), top(TrendingIndex.DAY));
+        assertEquals(List.of(1L), top(TrendingIndex.WEEK));
+    }
+
+    @Test
+    void jumpPastWholeWindowClearsIt() {
+        index.like(1, START);
+        index.like(2, START);
+        later(Duration.ofDays(30));
+        for (Duration window : List.of(TrendingIndex.HOUR, TrendingIndex.DAY, TrendingIndex.WEEK)) {
+            assertTrue(top(window).isEmpty());
+        }
+        index.like(3, now.get());
+        assertEquals(List.of(3L), top(TrendingIndex.HOUR));
+    }
+
+    @Test
+    void unlikeNeverGoesBelowZero() {
+        index.like(1, START);
+        index.like(1, START);
+        index.like(2, START);
+        Timestamp likedAt = new Timestamp(START);
+        index.unlike(1, likedAt);
+        index.unlike(2, likedAt);
+        index.unlike(2, likedAt);
+        index.unlike(3, likedAt);
+        index.unlike(1, null);
+        assertEquals(List.of(1L), top(TrendingIndex.HOUR));
+
+        index.like(2, START);
+        assertEquals(List.of(1L, 2L), top(TrendingIndex.HOUR));
+    }
+
+    @Test
+    void unlikeOutsideWindowKeepsIt() {
+        index.like(1, START - Duration.ofHours(2).toMillis());
+        index.like(1, START);
+        index.unlike(1, new Timestamp(START - Duration.ofHours(2).toMillis()));
+        assertEquals(List.of(1L), top(TrendingIndex.HOUR));
+        later(Duration.ofHours(1));
+        assertTrue(top(TrendingIndex.HOUR).isEmpty());
+        assertEquals(List.of(1L), top(TrendingIndex.DAY));
+    }
+
+    @Test
+    void tiesAreOrderedBySmallerId() {
+        for (long filmId : new long[]{4, 2, 3, 3, 1}) {
+            index.like(filmId, START);
+        }
+        assertEquals(List.of(3L, 1L, 2L, 4L), top(TrendingIndex.WEEK));
+        assertEquals(List.of(3L, 1L), index.top(TrendingIndex.WEEK, 2));
+    }
+
+    @Test
+    void zeroOrNegativeCountReturnsEmpty() {
+        index.like(1, START);
+        assertTrue(index.top(TrendingIndex.HOUR, 0).isEmpty());
+        assertTrue(index.top(TrendingIndex.HOUR, -1).isEmpty());
+        assertThrows(IllegalArgumentException.class, () -> index.top(Duration.ofMinutes(5), 10));
+    }
+
+    @Test
+    void loadSkipsLikesOlderThanWeek() {
+        index.like(9, START);
+        index.load(consumer -> {
+            consumer.accept(1, 1, START - Duration.ofMinutes(30).toMillis());
+            consumer.accept(2, 1, START - Duration.ofDays(3).toMillis());
+            consumer.accept(3, 1, START - Duration.ofDays(8).toMillis());
+        });
+        assertEquals(List.of(1L), top(TrendingIndex.HOUR));
+        assertEquals(List.of(1L, 2L), top(TrendingIndex.WEEK));
+    }
+
+    private void later(Duration duration) {
+        now.addAndGet(duration.toMillis());
+    }
+
+    private List<Long> top(Duration window) {
+        return index.top(window, 10);
+    }
+}
@@ -0,0 +1,99 @@
+package ru.yandex.practicum.filmorate.dao.journal;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import ru.yandex.practicum.filmorate.FilmorateApplication;
+import ru.yandex.practicum.filmorate.dao.FilmStorage;
+import ru.yandex.practicum.filmorate.dao.UserStorage;
+import ru.yandex.practicum.filmorate.dao.index.TrendingIndex;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.MPA;
+import ru.yandex.practicum.filmorate.model.User;
+
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Данные хранилищ в памяти переживают перезапуск: снимок и журнал после него
+ * восстанавливают то же состояние, что было до остановки.
+ */
+class MutationJournalTest {
+    @TempDir
+    Path dir;
+
+    @Test
+    void restartRestoresSnapshotAndLogTail() {
+        long userId;
+        long friendId;
+        long filmId;
+        try (ConfigurableApplicationContext context = start()) {
+            UserStorage users = context.getBean(UserStorage.class);
+            FilmStorage films = context.getBean(FilmStorage.class);
+            userId = users.create(user("j1")).getId();
+            friendId = users.create(user("j2")).getId();
+            filmId = films.create(Film.builder()
+                    .name("Журнал")
+                    .description("описание")
+                    .releaseDate(LocalDate.of(1999, 1, 1))
+                    .duration(90)
+                    .mpa(new MPA(2L, null))
+                    .genres(Set.of(new Genre(3L, null)))
+                    .build()).getId();
+            users.requestToFriend(userId, friendId);
+            films.addLike(filmId, friendId);
+
+            context.getBean(MutationJournal.class).snapshot();
+
+            // после снимка - только в журнале
+            users.confirmFriend(friendId, userId);
+            films.addLike(filmId, userId);
+            films.deleteLike(filmId, friendId);
+        }
+
+        try (ConfigurableApplicationContext context = start()) {
+            UserStorage users = context.getBean(UserStorage.class);
+            FilmStorage films = context.getBean(FilmStorage.class);
+
+            assertEquals("j1", users.findUserById(userId).orElseThrow().getLogin());
+            assertEquals(List.of(friendId), users.getFriends(userId).stream()
+                    .map(User::getId)
+                    .collect(Collectors.toList()));
+            assertThrows(RuntimeException.class, () -> users.confirmFriend(friendId, userId));
+            Film film = films.findFilmById(filmId).orElseThrow();
+            assertEquals("PG", film.getMpa().getName());
+            assertEquals("Мультфильм", film.getGenres().iterator().next().getName());
+            assertEquals(List.of(filmId), films.getFilmQuantityLike(1, null, 1999).stream()
+                    .map(Film::getId)
+                    .collect(Collectors.toList()));
+            assertEquals(List.of(filmId), films.getTrending(TrendingIndex.DAY, 10).stream()
+                    .map(Film::getId)
+                    .collect(Collectors.toList()));
+            assertThrows(RuntimeException.class, () -> films.deleteLike(filmId, friendId));
+            assertTrue(users.create(user("j3")).getId() > friendId);
+        }
+    }
+
+    private ConfigurableApplicationContext start() {
+        return new SpringApplicationBuilder(FilmorateApplication.class)
+                .web(WebApplicationType.NONE)
+                .profiles("inmemory")
+                .run("--spring.datasource.url=jdbc:h2:mem:journal;MODE=PostgreSQL;DB_CLOSE_DELAY=-1",
+                        "--filmorate.journal.enabled=true",
+                        "--filmorate.journal.dir=" + dir,
+                        "--filmorate.journal.segment-size=65536",
+                        "--spring.main.banner-mode=off");
+    }
+
+    private static User user(String login) {
+        return new User(null, login + "@mail.ru", login, login, LocalDate.of(1990, 1, 1));
+    }
+}
@@ -0,0 +1,124 @@
+package ru.yandex.practicum.filmorate.datasource;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import ru.yandex.practicum.filmorate.dao.FilmStorage;
+import ru.yandex.practicum.filmorate.dao.UserStorage;
+import ru.yandex.practicum.filmorate.exception.FilmNotFoundException;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.User;
+
+import javax.servlet.http.Cookie;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Маршрутизация чтения при отдельной реплике. Копирование снимков по расписанию в тесте
+ * отложено на час: фильм, созданный в основной базе, попадает в реплику только после явного
+ * вызова SnapshotReplicator.copy, и по тому, найден ли он, видно, какая база ответила.
+ * Метку отставания в реплике тест при необходимости выставляет сам.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:routing-primary;MODE=PostgreSQL;DB_CLOSE_DELAY=-1",
+        "filmorate.datasource.replica.url=jdbc:h2:mem:routing-replica;MODE=PostgreSQL;DB_CLOSE_DELAY=-1",
+        "filmorate.datasource.replica.heartbeat-interval-ms=3600000",
+        "filmorate.datasource.replica.snapshot.interval-ms=3600000"})
+class ReplicaRoutingTest {
+    @Autowired
+    private FilmStorage filmStorage;
+    @Autowired
+    private ReplicaLagMonitor lagMonitor;
+    @Autowired
+    private SnapshotReplicator replicator;
+    @Autowired
+    private UserStorage userStorage;
+    @Autowired
+    @Qualifier("replicaDataSource")
+    private HikariDataSource replicaDataSource;
+
+    @AfterEach
+    void resetRequest() {
+        RequestContextHolder.resetRequestAttributes();
+    }
+
+    @Test
+    void staleReplicaFallsBackToPrimary() {
+        replicatedAt(System.currentTimeMillis() - 60_000);
+        Film film = filmStorage.create(film());
+
+        assertFalse(lagMonitor.isFresh());
+        assertEquals(film.getName(), filmStorage.findFilmById(film.getId()).orElseThrow().getName());
+    }
+
+    @Test
+    void freshReplicaServesReadsExceptForRecentWriter() {
+        replicatedAt(System.currentTimeMillis());
+        assertTrue(lagMonitor.isFresh());
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(new MockHttpServletRequest(), response));
+        Film film = filmStorage.create(film());
+        Cookie lastWrite = response.getCookie(ReadRoutingAspect.LAST_WRITE_COOKIE);
+        assertNotNull(lastWrite);
+
+        // клиент без cookie читает реплику, куда фильм не попал
+        RequestContextHolder.resetRequestAttributes();
+        assertThrows(FilmNotFoundException.class, () -> filmStorage.findFilmById(film.getId()));
+
+        // автор изменения читает основную базу
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setCookies(lastWrite);
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request, new MockHttpServletResponse()));
+        assertEquals(film.getName(), filmStorage.findFilmById(film.getId()).orElseThrow().getName());
+    }
+
+    @Test
+    void snapshotBringsPrimaryChangesToReplica() {
+        Film film = filmStorage.create(film());
+        replicatedAt(System.currentTimeMillis());
+        assertThrows(FilmNotFoundException.class, () -> filmStorage.findFilmById(film.getId()));
+
+        replicator.copy();
+        lagMonitor.heartbeat();
+
+        assertTrue(lagMonitor.isFresh());
+        assertEquals(film.getName(), filmStorage.findFilmById(film.getId()).orElseThrow().getName());
+    }
+
+    @Test
+    void popularFilmsAreLoadedFromPrimaryLikeTheirIndex() {
+        User user = userStorage.create(new User(null, "r@mail.ru", "replica", "replica", LocalDate.of(1990, 1, 1)));
+        Film film = filmStorage.create(film());
+        filmStorage.addLike(film.getId(), user.getId());
+        replicatedAt(System.currentTimeMillis());
+
+        assertTrue(filmStorage.getFilmQuantityLike(10, null, 1990).stream()
+                .anyMatch(popular -> popular.getId().equals(film.getId())));
+    }
+
+    // так выглядела бы реплика, до которой изменения основной базы дошли к моменту time
+    private void replicatedAt(long time) {
+        new JdbcTemplate(replicaDataSource).update("UPDATE REPLICATION_HEARTBEAT SET UPDATED_AT = ? WHERE ID = 1",
+                new Timestamp(time));
+        lagMonitor.heartbeat();
+    }
+
+    private static Film film() {
+        return Film.builder()
+                .name("Реплика")
+                .description("описание")
+                .releaseDate(LocalDate.of(1990, 1, 1))
+                .duration(100)
+                .build();
+    }
+}